@@ -52,11 +52,20 @@ import exploration.rendezvous.MultiPointRendezvousStrategy;
 import static exploration.rendezvous.MultiPointRendezvousStrategy.findNearestPointInBaseCommRange;
 import exploration.rendezvous.RendezvousAgentData;
 import exploration.rendezvous.RendezvousStrategyFactory;
+import exploration.rendezvous.SamplePointSet;
 import exploration.rendezvous.SinglePointRendezvousStrategy;
 import exploration.rendezvous.SinglePointRendezvousStrategySettings;
 import java.util.*;
 import java.awt.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import path.DStarLitePathPlanner;
+import path.DistanceField;
+import path.HierarchicalPathPlanner;
+import path.MultiTargetSearch;
 import path.Path;
+import path.TopologicalNode;
 
 
 /**
@@ -83,6 +92,9 @@ public class RealAgent extends BasicAgent implements Agent {
     
     boolean needUpdatingAreaKnown;
 
+    // How calculatePath plans: with the topological map, with pure A* on the grid, or incrementally (D* Lite)
+    public static enum PathPlanningMode {Topological, PureAStar, Incremental}
+    
     // Occupancy Grid
     OccupancyGrid occGrid;
     LinkedList<Point> dirtyCells;   /* List of cells changed since last step
@@ -121,14 +133,33 @@ public class RealAgent extends BasicAgent implements Agent {
     private boolean missionComplete; // true only when mission complete (env fully explored)
     
     private Point nearestBasePoint; //location in range of base station that is nearest to us
+    private DistanceField baseDistanceField; //distances to baseDistanceFieldRoot, see getBaseDistanceField
+    private Point baseDistanceFieldRoot;
+    private DistanceField baseRangeField; //distances to the points of baseRangeFieldLinks, see getBaseRangeField
+    private java.util.List<CommLink> baseRangeFieldLinks;
+    private int baseRangeFieldLinkCount;
+    private HierarchicalPathPlanner hierarchicalPlanner; //for paths the topological map cannot plan, see calculatePath
+    private final LinkedList<DStarLitePathPlanner> incrementalPlanners; //most recently used first
+    private final LinkedList<MultiTargetSearch> idleTargetSearches; //see takeTargetSearch
+    
+    private final SamplePointSet samplePoints; //RV sample points, kept between replans
 
     private final TopologicalMap topologicalMap;
+    private TopologicalMap sharedTopologicalMap; //map from TopologicalMapStore that topologicalMap uses
+    private FutureTask<TopologicalMap> pendingTopologicalMap; //background rebuild, used when done
+    private final LinkedList<FutureTask<TopologicalMap>> discardedTopologicalMaps;
     int timeTopologicalMapUpdated;
     
     // dynamic behavior
     private Point currentGoal;  // needed for calculating dynamic role switch
     
     private SimulatorConfig simConfig;
+    
+    private Random random; //this agent's own stream, see RandomStreams
+    
+    private static final Profiler.Timer PATH_TO_BASE_TIMER = Profiler.timer("agent.pathToBase");
+    private static final Profiler.Timer TOPOLOGICAL_REBUILD_TIMER = Profiler.timer("topo.rebuild");
+    private static final Profiler.Timer BACKGROUND_REBUILD_TIMER = Profiler.timer("topo.rebuildBackground");
 
     public RealAgent(int envWidth, int envHeight, RobotConfig robot, SimulatorConfig simConfig) {
         super(robot.getRobotNumber(), 
@@ -161,6 +192,7 @@ public class RealAgent extends BasicAgent implements Agent {
         
         occGrid = new OccupancyGrid(envWidth, envHeight);
         topologicalMap = new TopologicalMap(null);
+        discardedTopologicalMaps = new LinkedList<FutureTask<TopologicalMap>>();
         dirtyCells = new LinkedList<Point>();
         pathTaken = new LinkedList<Point>();
         badFrontiers = new HashMap<Frontier, Boolean>();
@@ -180,8 +212,12 @@ public class RealAgent extends BasicAgent implements Agent {
         rendezvousStrategy = RendezvousStrategyFactory.createRendezvousStrategy(simConfig, this);
         
         currentGoal = new Point(x,y);
+        random = RandomStreams.create(0, robotNumber);
         
         nearestBasePoint = null;
+        samplePoints = new SamplePointSet();
+        incrementalPlanners = new LinkedList<DStarLitePathPlanner>();
+        idleTargetSearches = new LinkedList<MultiTargetSearch>();
     }
   
 // </editor-fold>     
@@ -231,6 +267,14 @@ public class RealAgent extends BasicAgent implements Agent {
     public SimulatorConfig getSimConfig() {
         return simConfig;
     }
+    
+    public Random getRandom() {
+        return random;
+    }
+    
+    public void setRandom(Random random) {
+        this.random = random;
+    }
 
     public OccupancyGrid getOccupancyGrid() {
         return occGrid;
@@ -306,7 +350,7 @@ public class RealAgent extends BasicAgent implements Agent {
     
     public void computePathToBaseStation()
     {
-        long realtimeStartAgentCycle = System.currentTimeMillis();
+        long timerStart = PATH_TO_BASE_TIMER.start();
         Point baseLocation = getTeammate(1).getLocation();
         if (nearestBasePoint == null) nearestBasePoint = baseLocation;
         else baseLocation = nearestBasePoint;
@@ -321,8 +365,83 @@ public class RealAgent extends BasicAgent implements Agent {
                 nearestBasePoint = baseLocation;
             }
         }
-        pathToBase = calculatePath(getLocation(), nearestBasePoint);
-        System.out.println(this.toString() + "Path to base computation took " + (System.currentTimeMillis()-realtimeStartAgentCycle) + "ms.");
+        pathToBase = null;
+        if (Constants.USE_BASE_DISTANCE_FIELD) {
+            pathToBase = getBaseDistanceField().getPathToSource(getLocation());
+            if (!pathToBase.found)
+                pathToBase = null;
+        }
+        if (pathToBase == null)
+            pathToBase = calculatePath(getLocation(), nearestBasePoint);
+        PATH_TO_BASE_TIMER.stop(timerStart);
+    }
+    
+    // Distances to nearestBasePoint over known free space, repaired as the occupancy grid changes
+    // and rebuilt only if nearestBasePoint moves.
+    private DistanceField getBaseDistanceField() {
+        if ((baseDistanceField == null) || !nearestBasePoint.equals(baseDistanceFieldRoot)) {
+            baseDistanceFieldRoot = new Point(nearestBasePoint);
+            baseDistanceField = new DistanceField(occGrid, Collections.singletonList(baseDistanceFieldRoot));
+        } else
+            baseDistanceField.update();
+        return baseDistanceField;
+    }
+    
+    /**
+     * Distances over known free space to the remote points of connectionsToBase, for
+     * MultiPointRendezvousStrategy.findNearestPointInBaseCommRange. Kept for the list object it was last
+     * seeded from (as long as that list is not resized), and recomputed if the grid changes.
+     */
+    public DistanceField getBaseRangeField(java.util.List<CommLink> connectionsToBase) {
+        if (!hasBaseRangeField(connectionsToBase)) {
+            LinkedList<Point> basePoints = new LinkedList<Point>();
+            for (CommLink baseLink : connectionsToBase)
+                basePoints.add(baseLink.getRemotePoint());
+            baseRangeField = new DistanceField(occGrid, basePoints);
+            baseRangeFieldLinks = connectionsToBase;
+            baseRangeFieldLinkCount = connectionsToBase.size();
+        }
+        return baseRangeField;
+    }
+    
+    /**
+     * Search buffers for one frontier path search, kept by the agent across cycles so that their grid
+     * sized arrays are not allocated again on every agent step thread. Searches running in parallel
+     * take one each; give it back with releaseTargetSearch.
+     */
+    public MultiTargetSearch takeTargetSearch() {
+        synchronized(idleTargetSearches) {
+            if (idleTargetSearches.isEmpty())
+                return new MultiTargetSearch();
+            return idleTargetSearches.removeFirst();
+        }
+    }
+    
+    public void releaseTargetSearch(MultiTargetSearch search) {
+        synchronized(idleTargetSearches) {
+            idleTargetSearches.addFirst(search);
+        }
+    }
+    
+    // True if getBaseRangeField(connectionsToBase) would not need to compute a new field
+    public boolean hasBaseRangeField(java.util.List<CommLink> connectionsToBase) {
+        return (baseRangeField != null) && (connectionsToBase == baseRangeFieldLinks)
+                && (connectionsToBase.size() == baseRangeFieldLinkCount) && baseRangeField.isUpToDate(occGrid);
+    }
+    
+    // True if the point is not in any key area of the topological map
+    private boolean isInUnexploredArea(Point p) {
+        int[][] areaGrid = topologicalMap.getAreaGrid();
+        if ((areaGrid == null) || (topologicalMap.getTopologicalNodes() == null) || !occGrid.locationExists(p.x, p.y))
+            return true;
+        TopologicalNode node = topologicalMap.getTopologicalNodes().get(areaGrid[p.x][p.y]);
+        return (node == null) || (node.getID() == Constants.UNEXPLORED_NODE_ID);
+    }
+    
+    private HierarchicalPathPlanner getHierarchicalPlanner() {
+        if (hierarchicalPlanner == null)
+            hierarchicalPlanner = new HierarchicalPathPlanner(occGrid);
+        return hierarchicalPlanner;
     }
     
     public Path getPathToBaseStation() {
@@ -358,24 +477,130 @@ public class RealAgent extends BasicAgent implements Agent {
     //and rebuilds the map if necessary
     public void forceUpdateTopologicalMap(boolean mustUpdate)
     {
+        discardPendingTopologicalMap();
         if (occGrid.hasMapChanged() || mustUpdate) {
             //System.out.println(this + " Updating topological map");
-            long timeStart = System.currentTimeMillis();
-            topologicalMap.setGrid(occGrid);   
-            //System.out.println(toString() + "setGrid, " + (System.currentTimeMillis()-timeStart) + "ms.");
-            topologicalMap.generateSkeleton();
-            //System.out.println(toString() + "generateSkeleton, " + (System.currentTimeMillis()-timeStart) + "ms.");
-            topologicalMap.findKeyPoints();
-            //System.out.println(toString() + "findKeyPoints, " + (System.currentTimeMillis()-timeStart) + "ms.");
-            topologicalMap.generateKeyAreas();
+            long timerStart = TOPOLOGICAL_REBUILD_TIMER.start();
+            if (Constants.SHARE_TOPOLOGICAL_MAPS) {
+                useBuiltTopologicalMap(TopologicalMapStore.acquire(occGrid.copy()));
+            } else {
+                releaseSharedTopologicalMap();
+                topologicalMap.setGrid(occGrid);   
+                //System.out.println(toString() + "setGrid, " + (System.currentTimeMillis()-timeStart) + "ms.");
+                topologicalMap.generateSkeleton();
+                //System.out.println(toString() + "generateSkeleton, " + (System.currentTimeMillis()-timeStart) + "ms.");
+                topologicalMap.findKeyPoints();
+                //System.out.println(toString() + "findKeyPoints, " + (System.currentTimeMillis()-timeStart) + "ms.");
+                topologicalMap.generateKeyAreas();
+            }
+            timeTopologicalMapUpdated = timeElapsed;
+            TOPOLOGICAL_REBUILD_TIMER.stop(timerStart);
+            occGrid.setMapHasChangedToFalse();
+        } else {
+            System.out.println(this + " Occupancy Grid not changed since last update, skipping topological map update");
+        }
+    }
+    
+    //Same check as forceUpdateTopologicalMap, but the map is rebuilt on a copy of the occupancy grid
+    //by a worker thread. The current map stays in use until publishTopologicalMap swaps in the new one.
+    private void requestTopologicalMapUpdate(boolean mustUpdate)
+    {
+        if (pendingTopologicalMap != null)
+            return;
+        if (occGrid.hasMapChanged() || mustUpdate) {
+            final OccupancyGrid snapshot = occGrid.copy();
+            pendingTopologicalMap = new FutureTask<TopologicalMap>(new Callable<TopologicalMap>() {
+                public TopologicalMap call() {
+                    long timerStart = BACKGROUND_REBUILD_TIMER.start();
+                    TopologicalMap map;
+                    if (Constants.SHARE_TOPOLOGICAL_MAPS) {
+                        map = TopologicalMapStore.acquire(snapshot);
+                    } else {
+                        map = new TopologicalMap(snapshot);
+                        map.generateSkeleton();
+                        map.findKeyPoints();
+                        map.generateKeyAreas();
+                    }
+                    BACKGROUND_REBUILD_TIMER.stop(timerStart);
+                    return map;
+                }
+            });
+            WorkerPool.execute(pendingTopologicalMap);
             timeTopologicalMapUpdated = timeElapsed;
-            System.out.println(toString() + "generated topological map, " + (System.currentTimeMillis()-timeStart) + "ms.");
             occGrid.setMapHasChangedToFalse();
         } else {
             System.out.println(this + " Occupancy Grid not changed since last update, skipping topological map update");
         }
     }
+    
+    //Swaps in the map from requestTopologicalMapUpdate if it is done, so it is used from now on
+    private void publishTopologicalMap()
+    {
+        releaseDiscardedTopologicalMaps();
+        if ((pendingTopologicalMap == null) || !pendingTopologicalMap.isDone())
+            return;
+        try {
+            useBuiltTopologicalMap(pendingTopologicalMap.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.out.println(this + " background topological map update failed: " + e.getCause());
+        }
+        pendingTopologicalMap = null;
+    }
+    
+    //Makes the agent's map use a complete map that was built on a copy of the occupancy grid
+    private void useBuiltTopologicalMap(TopologicalMap built)
+    {
+        topologicalMap.setGrid(occGrid);
+        topologicalMap.shareBuild(built);
+        occGrid.copyFinalTopologicalMapCells(built.getGrid());
+        releaseSharedTopologicalMap();
+        if (Constants.SHARE_TOPOLOGICAL_MAPS)
+            sharedTopologicalMap = built;
+    }
+    
+    private void releaseSharedTopologicalMap()
+    {
+        if (sharedTopologicalMap != null) {
+            TopologicalMapStore.release(sharedTopologicalMap);
+            sharedTopologicalMap = null;
+        }
+    }
+    
+    private void discardPendingTopologicalMap()
+    {
+        if (pendingTopologicalMap != null) {
+            discardedTopologicalMaps.add(pendingTopologicalMap);
+            pendingTopologicalMap = null;
+        }
+        releaseDiscardedTopologicalMaps();
+    }
+    
+    //Background rebuilds that are no longer wanted give their map back to the store once they are done
+    private void releaseDiscardedTopologicalMaps()
+    {
+        Iterator<FutureTask<TopologicalMap>> i = discardedTopologicalMaps.iterator();
+        while (i.hasNext()) {
+            FutureTask<TopologicalMap> discarded = i.next();
+            if (!discarded.isDone())
+                continue;
+            i.remove();
+            try {
+                if (Constants.SHARE_TOPOLOGICAL_MAPS)
+                    TopologicalMapStore.release(discarded.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                System.out.println(this + " background topological map update failed: " + e.getCause());
+            }
+        }
+    }
 
+    public SamplePointSet getSamplePoints() {
+        return samplePoints;
+    }
+    
     public RendezvousAgentData getRendezvousAgentData() {
         return rendezvousAgentData;
     }
@@ -461,7 +686,6 @@ public class RealAgent extends BasicAgent implements Agent {
 
     public Point takeStep(int timeElapsed) {
         //this.simConfig = simConfig;
-        long realtimeStartAgentStep = System.currentTimeMillis(); 
         Point nextStep = new Point(0,0);
         
         //previous time elapsed, used to check if we advanced to a new time cycle or are still in the old one
@@ -532,7 +756,7 @@ public class RealAgent extends BasicAgent implements Agent {
         
         //pruneUnexploredSpace();
         
-        System.out.println(this.toString() +  "Taking step complete, moving from " + getLocation() + " to " + nextStep + ", took " + (System.currentTimeMillis()-realtimeStartAgentStep) + "ms.");
+        System.out.println(this.toString() +  "Taking step complete, moving from " + getLocation() + " to " + nextStep);
 
         return nextStep;
     }
@@ -599,6 +823,47 @@ public class RealAgent extends BasicAgent implements Agent {
     {
         return calculatePath(startPoint, goalPoint, false);
     }
+    
+    // Incremental mode keeps a D* Lite planner per goal and repairs its last solution, for agents
+    // that replan to the same goal while following a path; falls back to the topological map
+    public Path calculatePath(Point startPoint, Point goalPoint, PathPlanningMode mode)
+    {
+        if (mode == PathPlanningMode.Incremental) {
+            if (Constants.USE_INCREMENTAL_PATHS) {
+                Path path = getIncrementalPlanner(goalPoint).findPath(startPoint);
+                if (path.found)
+                    return path;
+            }
+            mode = PathPlanningMode.Topological;
+        }
+        return calculatePath(startPoint, goalPoint, mode == PathPlanningMode.PureAStar);
+    }
+    
+    // Reuses the planner whose goal is nearest, moving its goal; a new one is only made while there
+    // are fewer than MAX_INCREMENTAL_PLANNERS and none has its goal within MAX_INCREMENTAL_GOAL_MOVE
+    private DStarLitePathPlanner getIncrementalPlanner(Point goal) {
+        DStarLitePathPlanner planner = null;
+        double plannerDist = Double.MAX_VALUE;
+        for (DStarLitePathPlanner p : incrementalPlanners) {
+            double dist = p.getGoal().distance(goal);
+            if (p.getGrid() == occGrid && dist < plannerDist) {
+                planner = p;
+                plannerDist = dist;
+            }
+        }
+        if ((planner == null) || ((plannerDist > Constants.MAX_INCREMENTAL_GOAL_MOVE)
+                && (incrementalPlanners.size() < Constants.MAX_INCREMENTAL_PLANNERS))) {
+            planner = new DStarLitePathPlanner(occGrid, goal);
+            if (incrementalPlanners.size() >= Constants.MAX_INCREMENTAL_PLANNERS)
+                incrementalPlanners.removeLast();
+        } else {
+            incrementalPlanners.remove(planner);
+            planner.setGoal(goal, Constants.MAX_INCREMENTAL_GOAL_MOVE);
+        }
+        incrementalPlanners.addFirst(planner);
+        return planner;
+    }
+
     public Path calculatePath(Point startPoint, Point goalPoint, boolean pureAStar)
     {
         
@@ -606,24 +871,44 @@ public class RealAgent extends BasicAgent implements Agent {
         int rebuild_topological_map_interval = Constants.REBUILD_TOPOLOGICAL_MAP_INTERVAL;
         if (timeTopologicalMapUpdated < 0) timeTopologicalMapUpdated = 
                 timeElapsed - Constants.MUST_REBUILD_TOPOLOGICAL_MAP_INTERVAL;
+        // without a complete map there is nothing to plan with meanwhile, so the first one is built right away.
+        // When a run must be repeatable it is always rebuilt in place, as the swap-in cycle depends on timing
+        boolean background = Constants.BACKGROUND_TOPOLOGICAL_MAP_REBUILD && (topologicalMap.getAreaGrid() != null)
+                && ((simConfig == null) || !simConfig.getUseFixedSeed());
+        publishTopologicalMap();
         if (timeElapsed - timeTopologicalMapUpdated >= rebuild_topological_map_interval)
         {
-            forceUpdateTopologicalMap(false);
+            if (background)
+                requestTopologicalMapUpdate(false);
+            else
+                forceUpdateTopologicalMap(false);
         }
         if (timeElapsed - timeTopologicalMapUpdated >= Constants.MUST_REBUILD_TOPOLOGICAL_MAP_INTERVAL)
         {
-            forceUpdateTopologicalMap(true);
+            if (background)
+                requestTopologicalMapUpdate(true);
+            else
+                forceUpdateTopologicalMap(true);
         }
-        boolean topologicalMapUpdated = (timeTopologicalMapUpdated == timeElapsed);
+        // a rebuild that is still running does not count, the map in use is older
+        boolean topologicalMapUpdated = (timeTopologicalMapUpdated == timeElapsed) && (pendingTopologicalMap == null);
         topologicalMap.setPathStart(startPoint);
         topologicalMap.setPathGoal(goalPoint);
+        if (!pureAStar && Constants.USE_HIERARCHICAL_PATHS && 
+                (isInUnexploredArea(startPoint) || isInUnexploredArea(goalPoint)))
+        {
+            // the topological map would fall back to a full-grid search, plan over grid clusters instead
+            Path hierarchicalPath = getHierarchicalPlanner().findPath(startPoint, goalPoint);
+            if (hierarchicalPath.found)
+                return hierarchicalPath;
+        }
         if (!pureAStar)
         {
             //System.out.println(this + "calculating topological path from " + startPoint + " to " + goalPoint);
             topologicalMap.getTopologicalPath();
             if (!topologicalMap.getPath().found && !topologicalMapUpdated) {
                 System.out.println(this + "Trying to rebuild topological map and replan path " + startPoint + " to " + goalPoint);
-                timeTopologicalMapUpdated = -1;
+                forceUpdateTopologicalMap(true);
                 return calculatePath(startPoint, goalPoint);
             } else if (!topologicalMap.getPath().found) {
                 System.out.println(this +"at location " + getLocation() + "failed to plan path " + startPoint + " to " + goalPoint + ", not retrying; " +
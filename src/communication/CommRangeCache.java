@@ -0,0 +1,133 @@
+/*
+ *     Copyright 2010, 2015 Julian de Hoog (julian@dehoog.ca), Victor Spirin (victor.spirin@cs.ox.ac.uk)
+ *
+ *     This file is part of MRESim 2.2, a simulator for testing the behaviour
+ *     of multiple robots exploring unknown environments.
+ *
+ *     If you use MRESim, I would appreciate an acknowledgement and/or a citation
+ *     of our papers:
+ *
+ *     @inproceedings{deHoog2009,
+ *         title = "Role-Based Autonomous Multi-Robot Exploration",
+ *         author = "Julian de Hoog, Stephen Cameron and Arnoud Visser",
+ *         year = "2009",
+ *         booktitle = "International Conference on Advanced Cognitive Technologies and Applications (COGNITIVE)",
+ *         location = "Athens, Greece",
+ *         month = "November",
+ *     }
+ *
+ *     @incollection{spirin2015mresim,
+ *       title={MRESim, a Multi-robot Exploration Simulator for the Rescue Simulation League},
+ *       author={Spirin, Victor and de Hoog, Julian and Visser, Arnoud and Cameron, Stephen},
+ *       booktitle={RoboCup 2014: Robot World Cup XVIII},
+ *       pages={106--117},
+ *       year={2015},
+ *       publisher={Springer}
+ *     }
+ *
+ *     MRESim is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     MRESim is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along with MRESim.
+ *     If not, see <http://www.gnu.org/licenses/>.
+ */
+package communication;
+
+import agents.RealAgent;
+import environment.Environment;
+import java.awt.Point;
+import java.awt.Polygon;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Comm range polygons (PropModel1.getRange) for visualisation.
+ * Polygons are only computed when asked for by the renderer, are cached per agent for a given
+ * location, heading, comm range and environment version, and are computed on a background pool.
+ * The caller always gets the most recent finished polygon (or null if there is none yet) and never
+ * waits for a computation.
+ */
+public class CommRangeCache {
+    
+    private static final ExecutorService pool = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "[CommRangeCache] worker");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    
+    private final Entry[] entries;
+    
+    public CommRangeCache(int numAgents) {
+        entries = new Entry[numAgents];
+        for (int i = 0; i < numAgents; i++)
+            entries[i] = new Entry();
+    }
+    
+    // Returns the range polygon of agent i, or the last one computed if the up to date one is not ready yet
+    public Polygon getRange(int i, final Environment env, RealAgent agent) {
+        final Entry entry = entries[i];
+        final Key key = new Key(agent.getLocation(), agent.getHeading(), agent.getCommRange(), env.getVersion());
+        
+        if (!key.equals(entry.key) && !entry.computing) {
+            entry.computing = true;
+            pool.execute(new Runnable() {
+                public void run() {
+                    try {
+                        Polygon range = PropModel1.getRange(env, key.location, key.heading, key.commRange);
+                        entry.polygon = range;
+                        entry.key = key;
+                    } finally {
+                        entry.computing = false;
+                    }
+                }
+            });
+        }
+        
+        return entry.polygon;
+    }
+    
+    private static class Entry {
+        volatile Key key;
+        volatile Polygon polygon;
+        volatile boolean computing;     // only one computation per agent in flight
+    }
+    
+    private static class Key {
+        final Point location;
+        final double heading;
+        final int commRange;
+        final int envVersion;
+        
+        Key(Point location, double heading, int commRange, int envVersion) {
+            this.location = new Point(location);
+            this.heading = heading;
+            this.commRange = commRange;
+            this.envVersion = envVersion;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key)obj;
+            return location.equals(other.location) && heading == other.heading && 
+                    commRange == other.commRange && envVersion == other.envVersion;
+        }
+        
+        @Override
+        public int hashCode() {
+            return location.hashCode() * 31 + envVersion;
+        }
+    }
+}
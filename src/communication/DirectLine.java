@@ -52,18 +52,42 @@ public class DirectLine {
     public static int[][] detectCommunication(Environment env, RealAgent[] agent) {
         int commTable[][] = new int[agent.length][agent.length];
         
-        for(int i=0; i<agent.length-1; i++)
-            for(int j=i+1; j<agent.length; j++)
-                commTable[i][j] = 0;
-
-        for(int i=0; i<agent.length-1; i++)
-            for(int j=i+1; j<agent.length; j++) 
-                if(agent[i].distanceTo(agent[j]) < (agent[i].getCommRange() + agent[j].getCommRange()) &&
-                   env.directLinePossible(agent[i].getX(), agent[i].getY(), agent[j].getX(), agent[j].getY())) {
-                    commTable[i][j] = 1;
-                    commTable[j][i] = 1;
-                }
+        // only agents in neighbouring cells of the index can be within range of each other
+        int[] pairs = SpatialIndex.forAgents(agent, SpatialIndex.maxRangeStaticCircle(agent)).getCandidatePairs();
+        for(int p=0; p<pairs.length; p+=2) {
+            int i = pairs[p];
+            int j = pairs[p+1];
+            if(isConnected(env, agent[i], agent[j])) {
+                commTable[i][j] = 1;
+                commTable[j][i] = 1;
+            }
+        }
         
         return commTable;
     }
+    
+    // As above, but only re-tests pairs where one of the agents has moved since the last call
+    public static int[][] detectCommunication(Environment env, RealAgent[] agent, LinkStateCache cache) {
+        int commTable[][] = new int[agent.length][agent.length];
+        
+        cache.startCycle(env, agent);
+        int[] pairs = SpatialIndex.forAgents(agent, SpatialIndex.maxRangeStaticCircle(agent)).getCandidatePairs();
+        for(int p=0; p<pairs.length; p+=2) {
+            int i = pairs[p];
+            int j = pairs[p+1];
+            if(!cache.isValid(i, j))
+                cache.setLink(i, j, isConnected(env, agent[i], agent[j]) ? 1 : 0);
+            if(cache.getLink(i, j) == 1) {
+                commTable[i][j] = 1;
+                commTable[j][i] = 1;
+            }
+        }
+        
+        return commTable;
+    }
+    
+    private static boolean isConnected(Environment env, RealAgent ag1, RealAgent ag2) {
+        return ag1.distanceTo(ag2) < (ag1.getCommRange() + ag2.getCommRange()) &&
+               env.directLinePossible(ag1.getX(), ag1.getY(), ag2.getX(), ag2.getY());
+    }
 }
@@ -0,0 +1,110 @@
+/*
+ *     Copyright 2010, 2015 Julian de Hoog (julian@dehoog.ca), Victor Spirin (victor.spirin@cs.ox.ac.uk)
+ *
+ *     This file is part of MRESim 2.2, a simulator for testing the behaviour
+ *     of multiple robots exploring unknown environments.
+ *
+ *     If you use MRESim, I would appreciate an acknowledgement and/or a citation
+ *     of our papers:
+ *
+ *     @inproceedings{deHoog2009,
+ *         title = "Role-Based Autonomous Multi-Robot Exploration",
+ *         author = "Julian de Hoog, Stephen Cameron and Arnoud Visser",
+ *         year = "2009",
+ *         booktitle = "International Conference on Advanced Cognitive Technologies and Applications (COGNITIVE)",
+ *         location = "Athens, Greece",
+ *         month = "November",
+ *     }
+ *
+ *     @incollection{spirin2015mresim,
+ *       title={MRESim, a Multi-robot Exploration Simulator for the Rescue Simulation League},
+ *       author={Spirin, Victor and de Hoog, Julian and Visser, Arnoud and Cameron, Stephen},
+ *       booktitle={RoboCup 2014: Robot World Cup XVIII},
+ *       pages={106--117},
+ *       year={2015},
+ *       publisher={Springer}
+ *     }
+ *
+ *     MRESim is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     MRESim is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along with MRESim.
+ *     If not, see <http://www.gnu.org/licenses/>.
+ */
+package communication;
+
+import agents.RealAgent;
+import environment.Environment;
+
+/**
+ * Remembers the direct communication links found in the previous cycle, so that comm models only
+ * re-test pairs where at least one agent has moved (or changed comm range) since then.
+ * Everything is re-tested if the environment has changed or the team has changed size.
+ */
+public class LinkStateCache {
+    
+    private Environment env;
+    private int envVersion;
+    private int cycle;
+    private int[] lastX;
+    private int[] lastY;
+    private int[] lastCommRange;
+    private int[] changedAt;            // cycle in which each agent last moved or changed comm range
+    private int[][] links;
+    private int[][] linkComputedAt;     // cycle in which each link was last tested
+    
+    // Call once per cycle before using isValid/getLink/setLink; returns number of agents that changed
+    public int startCycle(Environment env, RealAgent[] agent) {
+        cycle++;
+        boolean allChanged = (this.env != env) || (envVersion != env.getVersion()) || 
+                (links == null) || (links.length != agent.length);
+        
+        if (links == null || links.length != agent.length) {
+            lastX = new int[agent.length];
+            lastY = new int[agent.length];
+            lastCommRange = new int[agent.length];
+            changedAt = new int[agent.length];
+            links = new int[agent.length][agent.length];
+            linkComputedAt = new int[agent.length][agent.length];
+        }
+        this.env = env;
+        this.envVersion = env.getVersion();
+        
+        int numChanged = 0;
+        for (int i = 0; i < agent.length; i++) {
+            if (allChanged || lastX[i] != agent[i].getX() || lastY[i] != agent[i].getY() ||
+                    lastCommRange[i] != agent[i].getCommRange()) {
+                changedAt[i] = cycle;
+                numChanged++;
+            }
+            lastX[i] = agent[i].getX();
+            lastY[i] = agent[i].getY();
+            lastCommRange[i] = agent[i].getCommRange();
+        }
+        return numChanged;
+    }
+    
+    // True if the cached link between i and j was tested after both agents were last changed.
+    // Links that were not tested in some cycle (e.g. pairs skipped as out of range) stay invalid.
+    public boolean isValid(int i, int j) {
+        return linkComputedAt[i][j] >= changedAt[i] && linkComputedAt[i][j] >= changedAt[j];
+    }
+    
+    public int getLink(int i, int j) {
+        return links[i][j];
+    }
+    
+    public void setLink(int i, int j, int value) {
+        links[i][j] = value;
+        links[j][i] = value;
+        linkComputedAt[i][j] = cycle;
+        linkComputedAt[j][i] = cycle;
+    }
+}
@@ -64,21 +64,37 @@ public class PropModel1 {
     private static final int MAX_WALLS = 125; //maximum combined wall "thickness" after which attenuation stops making a difference
     private static final double CUTOFF = -93;
     
+    // Optional precomputed wall counts from a fixed transmitter (the ComStation), used by the simulator
+    private static PropagationMap propagationMap;
+    
+    public static void setPropagationMap(PropagationMap map) {
+        propagationMap = map;
+    }
+    
+    public static PropagationMap getPropagationMap() {
+        return propagationMap;
+    }
+    
     public static Polygon getRange(Environment env, BasicAgent agent) {
+        return getRange(env, agent.getLocation(), agent.getHeading(), agent.getCommRange());
+    }
+    
+    // Takes a snapshot of the agent's state, so it can run while the agent moves (see CommRangeCache)
+    public static Polygon getRange(Environment env, Point location, double heading, int commRange) {
         double INCREMENT = Math.PI / 64;
         Polygon range = new Polygon();
         double angle;
         int oldX, oldY, currX, currY;
         
         for(int i=0; i<=2*Math.PI/INCREMENT; i++) {
-            angle = agent.getHeading() + INCREMENT * i;
-            oldX = agent.getX();
-            oldY = agent.getY();
+            angle = heading + INCREMENT * i;
+            oldX = location.x;
+            oldY = location.y;
             for(int j=2; ; j+=2) {
-                currX = agent.getX() + (int)(Math.cos(angle) * j);
-                currY = agent.getY() + (int)(Math.sin(angle) * j);
+                currX = location.x + (int)(Math.cos(angle) * j);
+                currY = location.y + (int)(Math.sin(angle) * j);
                 if(!env.locationExists(currX, currY) ||
-                   signalStrength(agent.getCommRange(), env, agent.getLocation(), new Point(currX, currY)) < CUTOFF) {
+                   signalStrength(commRange, env, location, new Point(currX, currY)) < CUTOFF) {
                     range.addPoint(oldX, oldY);
                     break;
                 }
@@ -178,7 +194,11 @@ public class PropModel1 {
     //<editor-fold defaultstate="collapsed" desc="Signal Strength">
     //For use by simulation
     private static double signalStrength(double agentRange, Environment env, Point p1, Point p2) {
-        int numWalls = Math.min(MAX_WALLS, env.numObstaclesOnLine(p1.x, p1.y, p2.x, p2.y));
+        int numWalls;
+        if (propagationMap != null && propagationMap.isTransmitter(env, p1))
+            numWalls = Math.min(MAX_WALLS, propagationMap.numObstaclesTo(p2.x, p2.y));
+        else
+            numWalls = Math.min(MAX_WALLS, env.numObstaclesOnLine(p1.x, p1.y, p2.x, p2.y));
         double distance = p1.distance(p2);
         
         return (REF_SIGNAL - 10 * PATHLOSS_FACTOR * Math.log10(distance / /*REF_DISTANCE*/agentRange) - numWalls * WALL_ATTENUATION_SIM);
@@ -197,20 +217,40 @@ public class PropModel1 {
     public static int[][] detectCommunication(Environment env, RealAgent[] agent) {
         int commTable[][] = new int[agent.length][agent.length];
         
-        for(int i=0; i<agent.length; i++)
-            for(int j=0; j<agent.length; j++)
-                commTable[i][j] = 0;
+        // only agents in neighbouring cells of the index can be within range of each other
+        int[] pairs = SpatialIndex.forAgents(agent, SpatialIndex.maxRangePropModel1(agent)).getCandidatePairs();
+        for(int p=0; p<pairs.length; p+=2) {
+            int i = pairs[p];
+            int j = pairs[p+1];
+            if(signalStrength(agent[i].getCommRange(), env, agent[i].getLocation(), agent[j].getLocation()) > CUTOFF) {
+                commTable[i][j] = 1;
+                commTable[j][i] = 1;
+            }
+        }
         
-        for(int i=0; i<agent.length-1; i++)
-            for(int j=i+1; j<agent.length; j++) {
-                if(signalStrength(agent[i].getCommRange(), env, agent[i].getLocation(), agent[j].getLocation()) > CUTOFF) {
-                    commTable[i][j] = 1;
-                    commTable[j][i] = 1;
-                }
+        return commTable;
+    }
+    
+    // As above, but only re-tests pairs where one of the agents has moved since the last call
+    public static int[][] detectCommunication(Environment env, RealAgent[] agent, LinkStateCache cache) {
+        int commTable[][] = new int[agent.length][agent.length];
+        
+        cache.startCycle(env, agent);
+        int[] pairs = SpatialIndex.forAgents(agent, SpatialIndex.maxRangePropModel1(agent)).getCandidatePairs();
+        for(int p=0; p<pairs.length; p+=2) {
+            int i = pairs[p];
+            int j = pairs[p+1];
+            if(!cache.isValid(i, j))
+                cache.setLink(i, j, 
+                        signalStrength(agent[i].getCommRange(), env, agent[i].getLocation(), agent[j].getLocation()) > CUTOFF ? 1 : 0);
+            if(cache.getLink(i, j) == 1) {
+                commTable[i][j] = 1;
+                commTable[j][i] = 1;
             }
+        }
         
         return commTable;
-    }    
+    }
     
     public static double getRangeEstimate(RealAgent agent, Point p) {
         double INCREMENT = Math.PI / 64;
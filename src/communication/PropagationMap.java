@@ -0,0 +1,303 @@
+/*
+ *     Copyright 2010, 2015 Julian de Hoog (julian@dehoog.ca), Victor Spirin (victor.spirin@cs.ox.ac.uk)
+ *
+ *     This file is part of MRESim 2.2, a simulator for testing the behaviour
+ *     of multiple robots exploring unknown environments.
+ *
+ *     If you use MRESim, I would appreciate an acknowledgement and/or a citation
+ *     of our papers:
+ *
+ *     @inproceedings{deHoog2009,
+ *         title = "Role-Based Autonomous Multi-Robot Exploration",
+ *         author = "Julian de Hoog, Stephen Cameron and Arnoud Visser",
+ *         year = "2009",
+ *         booktitle = "International Conference on Advanced Cognitive Technologies and Applications (COGNITIVE)",
+ *         location = "Athens, Greece",
+ *         month = "November",
+ *     }
+ *
+ *     @incollection{spirin2015mresim,
+ *       title={MRESim, a Multi-robot Exploration Simulator for the Rescue Simulation League},
+ *       author={Spirin, Victor and de Hoog, Julian and Visser, Arnoud and Cameron, Stephen},
+ *       booktitle={RoboCup 2014: Robot World Cup XVIII},
+ *       pages={106--117},
+ *       year={2015},
+ *       publisher={Springer}
+ *     }
+ *
+ *     MRESim is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     MRESim is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along with MRESim.
+ *     If not, see <http://www.gnu.org/licenses/>.
+ */
+package communication;
+
+import config.Constants;
+import environment.Environment;
+import exploration.Profiler;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Precomputed number of walls between a fixed transmitter (usually the ComStation) and every cell
+ * of the environment, as counted by Environment.numObstaclesOnLine(transmitter, cell).
+ * Signal strength from the transmitter then only needs a lookup instead of a walk along the line.
+ * 
+ * The map is built once, in parallel, and cached on disk keyed by the environment contents and
+ * transmitter location. Cells whose line to the transmitter crosses a changed part of the
+ * environment are marked stale and recomputed lazily the next time they are looked up.
+ * Lookups and invalidation are synchronized, as comm link tests look cells up from worker threads.
+ */
+public class PropagationMap {
+    
+    private static final int STALE = -1;
+    private static final int FILE_FORMAT_VERSION = 1;
+    
+    private static final Profiler.Timer LOAD_TIMER = Profiler.timer("propagationMap.load");
+    private static final Profiler.Timer BUILD_TIMER = Profiler.timer("propagationMap.build");
+    
+    private final Environment env;
+    private final Point transmitter;
+    private final int columns;
+    private final int rows;
+    private final short[] walls;        // indexed by x * rows + y
+    private int envVersion;             // environment version the map is consistent with
+    
+    private PropagationMap(Environment env, Point transmitter) {
+        this.env = env;
+        this.transmitter = new Point(transmitter);
+        this.columns = env.getColumns();
+        this.rows = env.getRows();
+        this.walls = new short[columns * rows];
+        this.envVersion = env.getVersion();
+    }
+    
+    // Loads the map from the disk cache if present, otherwise builds it and saves it to the cache
+    public static PropagationMap loadOrBuild(Environment env, Point transmitter) {
+        long timerStart = LOAD_TIMER.start();
+        PropagationMap map = new PropagationMap(env, transmitter);
+        File cacheFile = map.getCacheFile();
+        
+        boolean loaded = cacheFile.exists() && map.load(cacheFile);
+        LOAD_TIMER.stop(timerStart);
+        if (loaded) {
+            System.out.println(map.toString() + "Loaded from " + cacheFile.getName() + ".");
+            return map;
+        }
+        
+        timerStart = BUILD_TIMER.start();
+        map.build();
+        BUILD_TIMER.stop(timerStart);
+        System.out.println(map.toString() + "Built for transmitter at (" + transmitter.x + ", " + transmitter.y + ").");
+        map.save(cacheFile);
+        return map;
+    }
+    
+// <editor-fold defaultstate="collapsed" desc="Lookup">
+    
+    public boolean isTransmitter(Environment env, Point p) {
+        return (this.env == env) && transmitter.equals(p);
+    }
+    
+    public Point getTransmitter() {
+        return transmitter;
+    }
+    
+    // Same as env.numObstaclesOnLine(transmitter.x, transmitter.y, x, y)
+    public synchronized int numObstaclesTo(int x, int y) {
+        if (env.getVersion() != envVersion) {
+            // Environment changed without us being told where; nothing can be trusted
+            invalidateAll();
+        }
+        if (!env.locationExists(x, y))
+            return env.numObstaclesOnLine(transmitter.x, transmitter.y, x, y);
+        
+        int index = x * rows + y;
+        int value = walls[index];
+        if (value == STALE) {
+            value = env.numObstaclesOnLine(transmitter.x, transmitter.y, x, y);
+            walls[index] = (short)value;
+        }
+        return value;
+    }
+    
+// </editor-fold>
+    
+// <editor-fold defaultstate="collapsed" desc="Invalidation">
+    
+    // Marks stale every cell whose line to the transmitter may pass through the changed area.
+    // Must be called after the environment has been modified.
+    public synchronized void invalidate(Rectangle changedArea) {
+        // line samples are truncated towards the transmitter, so they can be up to one pixel off the true line
+        Rectangle area = new Rectangle(changedArea.x - 1, changedArea.y - 1, 
+                changedArea.width + 2, changedArea.height + 2);
+        envVersion = env.getVersion();
+        
+        if (area.contains(transmitter)) {
+            invalidateAll();
+            return;
+        }
+        
+        // Angular wedge covered by the area as seen from the transmitter, relative to its centre direction
+        double centreAngle = Math.atan2(area.getCenterY() - transmitter.y, area.getCenterX() - transmitter.x);
+        double minAngle = 0, maxAngle = 0;
+        int[] cornersX = {area.x, area.x + area.width, area.x, area.x + area.width};
+        int[] cornersY = {area.y, area.y, area.y + area.height, area.y + area.height};
+        for (int i = 0; i < 4; i++) {
+            double angle = angleDifference(
+                    Math.atan2(cornersY[i] - transmitter.y, cornersX[i] - transmitter.x), centreAngle);
+            minAngle = Math.min(minAngle, angle);
+            maxAngle = Math.max(maxAngle, angle);
+        }
+        double minDistance = distanceToRectangle(transmitter, area);
+        
+        int counter = 0;
+        for (int x = 0; x < columns; x++)
+            for (int y = 0; y < rows; y++) {
+                if (transmitter.distance(x, y) < minDistance)
+                    continue;
+                double angle = angleDifference(Math.atan2(y - transmitter.y, x - transmitter.x), centreAngle);
+                if (angle >= minAngle && angle <= maxAngle) {
+                    walls[x * rows + y] = STALE;
+                    counter++;
+                }
+            }
+        System.out.println(this.toString() + "Invalidated " + counter + " cells.");
+    }
+    
+    public synchronized void invalidateAll() {
+        for (int i = 0; i < walls.length; i++)
+            walls[i] = STALE;
+        envVersion = env.getVersion();
+    }
+    
+    // Difference between two angles, normalised to (-PI, PI]
+    private static double angleDifference(double angle, double reference) {
+        double diff = angle - reference;
+        while (diff > Math.PI) diff -= 2 * Math.PI;
+        while (diff <= -Math.PI) diff += 2 * Math.PI;
+        return diff;
+    }
+    
+    private static double distanceToRectangle(Point p, Rectangle r) {
+        double dx = Math.max(0, Math.max(r.x - p.x, p.x - (r.x + r.width)));
+        double dy = Math.max(0, Math.max(r.y - p.y, p.y - (r.y + r.height)));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+    
+// </editor-fold>
+    
+// <editor-fold defaultstate="collapsed" desc="Build">
+    
+    private void build() {
+        final int numThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        List<Thread> threads = new ArrayList<Thread>();
+        
+        for (int t = 0; t < numThreads; t++) {
+            final int firstColumn = t;
+            Thread worker = new Thread(new Runnable() {
+                public void run() {
+                    for (int x = firstColumn; x < columns; x += numThreads)
+                        for (int y = 0; y < rows; y++)
+                            walls[x * rows + y] = 
+                                    (short)env.numObstaclesOnLine(transmitter.x, transmitter.y, x, y);
+                }
+            });
+            worker.setName(this.toString() + t);
+            worker.start();
+            threads.add(worker);
+        }
+        
+        for (int i = 0; i < threads.size(); i++) {
+            try {
+                threads.get(i).join();
+            } catch (InterruptedException e) {
+                System.out.println(this.toString() + "Build thread " + i + " interrupted, map invalidated.");
+                invalidateAll();
+            }
+        }
+    }
+    
+// </editor-fold>
+    
+// <editor-fold defaultstate="collapsed" desc="Disk cache">
+    
+    private File getCacheFile() {
+        CRC32 crc = new CRC32();
+        for (int x = 0; x < columns; x++)
+            for (int y = 0; y < rows; y++)
+                crc.update(env.obstacleAt(x, y) ? 1 : 0);
+        String name = "propmap_" + columns + "x" + rows + "_" + Long.toHexString(crc.getValue()) + 
+                "_" + transmitter.x + "_" + transmitter.y + ".bin";
+        return new File(Constants.PROPAGATION_MAP_CACHE_DIRECTORY, name);
+    }
+    
+    private boolean load(File file) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(new FileInputStream(file))));
+            try {
+                if (in.readInt() != FILE_FORMAT_VERSION || in.readInt() != columns || in.readInt() != rows ||
+                        in.readInt() != transmitter.x || in.readInt() != transmitter.y)
+                    return false;
+                for (int i = 0; i < walls.length; i++)
+                    walls[i] = in.readShort();
+                return true;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            System.out.println(this.toString() + "Error: could not read cache file " + file + ", rebuilding.");
+            return false;
+        }
+    }
+    
+    private void save(File file) {
+        try {
+            file.getParentFile().mkdirs();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(new FileOutputStream(file))));
+            try {
+                out.writeInt(FILE_FORMAT_VERSION);
+                out.writeInt(columns);
+                out.writeInt(rows);
+                out.writeInt(transmitter.x);
+                out.writeInt(transmitter.y);
+                for (int i = 0; i < walls.length; i++)
+                    out.writeShort(walls[i]);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            System.out.println(this.toString() + "Error writing cache file " + file);
+        }
+    }
+    
+// </editor-fold>
+    
+    @Override
+    public String toString() {
+        return ("[PropagationMap] ");
+    }
+}
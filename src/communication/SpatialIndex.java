@@ -0,0 +1,178 @@
+/*
+ *     Copyright 2010, 2015 Julian de Hoog (julian@dehoog.ca), Victor Spirin (victor.spirin@cs.ox.ac.uk)
+ *
+ *     This file is part of MRESim 2.2, a simulator for testing the behaviour
+ *     of multiple robots exploring unknown environments.
+ *
+ *     If you use MRESim, I would appreciate an acknowledgement and/or a citation
+ *     of our papers:
+ *
+ *     @inproceedings{deHoog2009,
+ *         title = "Role-Based Autonomous Multi-Robot Exploration",
+ *         author = "Julian de Hoog, Stephen Cameron and Arnoud Visser",
+ *         year = "2009",
+ *         booktitle = "International Conference on Advanced Cognitive Technologies and Applications (COGNITIVE)",
+ *         location = "Athens, Greece",
+ *         month = "November",
+ *     }
+ *
+ *     @incollection{spirin2015mresim,
+ *       title={MRESim, a Multi-robot Exploration Simulator for the Rescue Simulation League},
+ *       author={Spirin, Victor and de Hoog, Julian and Visser, Arnoud and Cameron, Stephen},
+ *       booktitle={RoboCup 2014: Robot World Cup XVIII},
+ *       pages={106--117},
+ *       year={2015},
+ *       publisher={Springer}
+ *     }
+ *
+ *     MRESim is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     MRESim is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along with MRESim.
+ *     If not, see <http://www.gnu.org/licenses/>.
+ */
+package communication;
+
+import agents.RealAgent;
+import java.awt.Point;
+import java.util.List;
+
+/**
+ * Uniform grid over a set of positions (agents, sample points), with cells as large as the maximum
+ * possible comm range. Two positions closer than that range are always in the same or adjacent
+ * cells, so comm checks only need to run on those pairs instead of on every pair.
+ * Built in O(number of positions) with a counting sort over the cells.
+ */
+public class SpatialIndex {
+    
+    private final int count;
+    private final int cellSize;
+    private final int minCellX, minCellY;
+    private final int numCellsX, numCellsY;
+    private final int[] cellStart;      // items of cell c are cellItems[cellStart[c] .. cellStart[c+1]-1]
+    private final int[] cellItems;
+    private final int[] itemCell;
+    
+    public SpatialIndex(int[] x, int[] y, int count, double maxRange) {
+        this.count = count;
+        this.cellSize = Math.max(1, (int)Math.ceil(maxRange));
+        
+        int minX = 0, minY = 0, maxX = 0, maxY = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || x[i] < minX) minX = x[i];
+            if (i == 0 || y[i] < minY) minY = y[i];
+            if (i == 0 || x[i] > maxX) maxX = x[i];
+            if (i == 0 || y[i] > maxY) maxY = y[i];
+        }
+        minCellX = minX / cellSize;
+        minCellY = minY / cellSize;
+        numCellsX = maxX / cellSize - minCellX + 1;
+        numCellsY = maxY / cellSize - minCellY + 1;
+        
+        cellStart = new int[numCellsX * numCellsY + 1];
+        cellItems = new int[count];
+        itemCell = new int[count];
+        
+        for (int i = 0; i < count; i++) {
+            itemCell[i] = cellIndex(cellX(x[i]), cellY(y[i]));
+            cellStart[itemCell[i] + 1]++;
+        }
+        for (int c = 0; c < numCellsX * numCellsY; c++)
+            cellStart[c + 1] += cellStart[c];
+        int[] fill = new int[numCellsX * numCellsY];
+        for (int i = 0; i < count; i++) {
+            int c = itemCell[i];
+            cellItems[cellStart[c] + fill[c]] = i;
+            fill[c]++;
+        }
+    }
+    
+    public static SpatialIndex forAgents(RealAgent[] agent, double maxRange) {
+        int[] x = new int[agent.length];
+        int[] y = new int[agent.length];
+        for (int i = 0; i < agent.length; i++) {
+            x[i] = agent[i].getX();
+            y[i] = agent[i].getY();
+        }
+        return new SpatialIndex(x, y, agent.length, maxRange);
+    }
+    
+    public static SpatialIndex forPoints(List<? extends Point> points, double maxRange) {
+        int[] x = new int[points.size()];
+        int[] y = new int[points.size()];
+        int i = 0;
+        for (Point p : points) {
+            x[i] = p.x;
+            y[i] = p.y;
+            i++;
+        }
+        return new SpatialIndex(x, y, points.size(), maxRange);
+    }
+    
+    // Maximum distance at which any two agents could possibly be connected, for each comm model
+    public static double maxRangeStaticCircle(RealAgent[] agent) {
+        return 2 * maxCommRange(agent);
+    }
+    
+    public static double maxRangePropModel1(RealAgent[] agent) {
+        return PropModel1.getMaxRange(maxCommRange(agent));
+    }
+    
+    private static int maxCommRange(RealAgent[] agent) {
+        int max = 0;
+        for (int i = 0; i < agent.length; i++)
+            max = Math.max(max, agent[i].getCommRange());
+        return max;
+    }
+    
+    // Index pairs (i, j), i < j, that are in the same or adjacent cells, flattened as
+    // {i0, j0, i1, j1, ...}. Every pair of positions within maxRange of each other is included.
+    public int[] getCandidatePairs() {
+        int[] pairs = new int[16];
+        int numPairs = 0;
+        
+        for (int i = 0; i < count; i++) {
+            int cx = itemCell[i] % numCellsX;
+            int cy = itemCell[i] / numCellsX;
+            for (int x = Math.max(0, cx - 1); x <= Math.min(numCellsX - 1, cx + 1); x++)
+                for (int y = Math.max(0, cy - 1); y <= Math.min(numCellsY - 1, cy + 1); y++) {
+                    int c = cellIndex(x, y);
+                    for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                        int j = cellItems[k];
+                        if (j <= i) continue;
+                        if (numPairs * 2 + 2 > pairs.length) {
+                            int[] larger = new int[pairs.length * 2];
+                            System.arraycopy(pairs, 0, larger, 0, pairs.length);
+                            pairs = larger;
+                        }
+                        pairs[numPairs * 2] = i;
+                        pairs[numPairs * 2 + 1] = j;
+                        numPairs++;
+                    }
+                }
+        }
+        
+        int[] result = new int[numPairs * 2];
+        System.arraycopy(pairs, 0, result, 0, result.length);
+        return result;
+    }
+    
+    private int cellX(int x) {
+        return x / cellSize - minCellX;
+    }
+    
+    private int cellY(int y) {
+        return y / cellSize - minCellY;
+    }
+    
+    private int cellIndex(int cellX, int cellY) {
+        return cellY * numCellsX + cellX;
+    }
+}
@@ -52,16 +52,16 @@ public class StaticCircle {
     public static int[][] detectCommunication(Environment env, RealAgent[] agent) {
         int commTable[][] = new int[agent.length][agent.length];
         
-        for(int i=0; i<agent.length-1; i++)
-            for(int j=i+1; j<agent.length; j++)
-                commTable[i][j] = 0;
-
-        for(int i=0; i<agent.length-1; i++)
-            for(int j=i+1; j<agent.length; j++) 
-                if(agent[i].distanceTo(agent[j]) < (agent[i].getCommRange() + agent[j].getCommRange())) {
-                    commTable[i][j] = 1;
-                    commTable[j][i] = 1;
-                }
+        // only agents in neighbouring cells of the index can be within range of each other
+        int[] pairs = SpatialIndex.forAgents(agent, SpatialIndex.maxRangeStaticCircle(agent)).getCandidatePairs();
+        for(int p=0; p<pairs.length; p+=2) {
+            int i = pairs[p];
+            int j = pairs[p+1];
+            if(agent[i].distanceTo(agent[j]) < (agent[i].getCommRange() + agent[j].getCommRange())) {
+                commTable[i][j] = 1;
+                commTable[j][i] = 1;
+            }
+        }
         
         return commTable;
     }
@@ -48,17 +48,14 @@ import java.awt.Color;
  */
 public class Constants {
     
-    // Max number of rows in environment
+    // Max number of rows in environment (at most 32767, as path.PointList stores coordinates in 16 bits)
     public static final int MAX_ROWS = 600;
     
-    // Max number of columns in enviroment
+    // Max number of columns in enviroment (at most 32767, see MAX_ROWS)
     public static final int MAX_COLS = 800;
     
-    // Random seed for random walk (set to a constant for testing, otherwise to System.currentTimeMillis())
-    public static final int RANDOM_SEED = (int)System.currentTimeMillis();
-    
-    // Max time to search for a path, in ms
-    public static final int MAX_PATH_SEARCH_TIME = 500;
+    // Max number of cells (jump points for jump point search) a path search may expand before it gives up
+    public static final int MAX_PATH_SEARCH_EXPANSIONS = 4000;
     
     // Size of relay in image
     public static final int AGENT_RADIUS = 4; // default 4;
@@ -174,8 +171,65 @@ public class Constants {
     // How much better should RV through a Wall be, compared to RV from the same spot not through a wall, to be accepted
     public static final double MIN_RV_THROUGH_WALL_ACCEPT_RATIO = 0.8;
     
-    // Maximum time we're allowed to search for distance by skeleton, in ms
-    public static final long MAX_TIME_DISTANCE_BY_SKELETON = 100;
+    // Precompute wall counts from the ComStation to every cell for PropModel1 (see communication.PropagationMap)
+    public static final boolean USE_PROPAGATION_MAP = true;
+    
+    // Where precomputed propagation maps are cached between runs
+    public static final String PROPAGATION_MAP_CACHE_DIRECTORY = System.getProperty("user.dir") + "/cache/";
+    
+    // Keep each agent's RV sample points and their comm links between replans (see SamplePointSet)
+    public static final boolean USE_INCREMENTAL_SAMPLE_POINTS = true;
+    
+    // Find the nearest point in base comm range with one multi-source sweep instead of a path per base point
+    public static final boolean USE_BASE_RANGE_DISTANCE_FIELD = true;
+    
+    // Plan the path back to base by following a per-agent distance field instead of running the planner
+    public static final boolean USE_BASE_DISTANCE_FIELD = true;
+    
+    // Find path costs to all frontiers of interest with one search per agent (see exploration.FrontierPathSearch);
+    // the path to the chosen frontier is still planned with RealAgent.calculatePath
+    public static final boolean USE_FRONTIER_PATH_SEARCH = true;
+    
+    // The frontier path search gives up on targets whose path would be this many times longer than the
+    // straight line to them; agent.calculatePath is used for those
+    public static final double FRONTIER_PATH_SEARCH_MAX_DETOUR = 3;
+    
+    // How many WorkerPool threads one agent's planning may use besides its own, so that agents
+    // replanning in the same cycle share the pool
+    public static final int MAX_HELPER_THREADS_PER_AGENT = 2;
+    
+    // How robots are assigned to frontiers in FrontierExploration (see exploration.FrontierAssigner)
+    public static final int FRONTIER_ASSIGNER_GREEDY = 0;
+    public static final int FRONTIER_ASSIGNER_HUNGARIAN = 1;
+    public static final int FRONTIER_ASSIGNER = FRONTIER_ASSIGNER_GREEDY;
+    // The Hungarian assignment only evaluates this many reachable frontiers per robot exactly, best estimates first
+    public static final int HUNGARIAN_CANDIDATES_PER_ROBOT = 5;
+    
+    // Agents of a communicating group that plan in the same time step with the same merged map share one
+    // frontier assignment, computed for the whole group by the first of them (see FrontierExploration)
+    public static final boolean SHARE_FRONTIER_ASSIGNMENT = true;
+    
+    // Plan paths from or to unexplored areas of the topological map with hierarchical path planning
+    // over grid clusters (see path.HierarchicalPathPlanner) instead of a full-grid search
+    public static final boolean USE_HIERARCHICAL_PATHS = true;
+    
+    // Replan paths to rendezvous points and base with D* Lite planners that repair their previous solution
+    // (see RealAgent.calculatePath), keeping at most MAX_INCREMENTAL_PLANNERS per agent. A planner is moved
+    // to a new goal rather than replaced; goals moved further than MAX_INCREMENTAL_GOAL_MOVE cells are
+    // planned from scratch in the same planner
+    public static final boolean USE_INCREMENTAL_PATHS = true;
+    public static final int MAX_INCREMENTAL_PLANNERS = 2;
+    public static final int MAX_INCREMENTAL_GOAL_MOVE = 40;
+    
+    // Rebuild topological maps on a snapshot of the grid in the background, planning with the last complete
+    // map meanwhile; forced rebuilds (RealAgent.forceUpdateTopologicalMap) are always synchronous
+    public static final boolean BACKGROUND_TOPOLOGICAL_MAP_REBUILD = true;
+    
+    // Agents whose grids have the same free space and obstacles use one topological map (TopologicalMapStore)
+    public static final boolean SHARE_TOPOLOGICAL_MAPS = true;
+    
+    // Time the phases of each cycle (exploration.Profiler); a summary is printed and saved as JSON after each run
+    public static final boolean PROFILE_CYCLES = true;
     
     public static final boolean OUTPUT_PATH_ERROR = false;
     public static final String DEFAULT_PATH_LOG_DIRECTORY = "C:\\Users\\Victor\\Sources\\University\\MRESim\\GIT\\MRESim\\patherror\\";//System.getProperty("user.dir") + "\\patherror\\";
@@ -97,6 +97,15 @@ public class SimulatorConfig {
     private boolean relayExplore; //Should relay also explore if it gets a chance in RBE
     private boolean tryToGetToExplorerRV;
     private boolean useSingleMeetingTime;
+    
+    // The following are only set from the command line and are not saved with the config
+    private boolean useFixedSeed; //if false, every run picks a new seed (printed at the start of the run)
+    private long randomSeed; //seed of the run when useFixedSeed is set
+    private boolean checkDeterminism; //print a hash of the world state every cycle so two runs can be diffed
+    
+    // e.g. -Dmresim.seed=42 (MainGUI also accepts --seed 42 and --check-determinism)
+    public static final String SEED_PROPERTY = "mresim.seed";
+    public static final String CHECK_DETERMINISM_PROPERTY = "mresim.checkDeterminism";
 
     public SimulatorConfig() {
         boolean oldEnvVariableConfigFound = loadOldSimulatorConfig();
@@ -127,6 +136,7 @@ public class SimulatorConfig {
             tryToGetToExplorerRV = false;
             useSingleMeetingTime = false;
         }
+        loadCommandLineOverrides();
         
         boolean oldWallConfigFound = loadOldWallConfig();
         if(!oldWallConfigFound)
@@ -355,7 +365,31 @@ public class SimulatorConfig {
     public boolean getUseSingleMeetingTime() {
         return useSingleMeetingTime;
     }
-    
+
+    public void setUseFixedSeed(boolean s) {
+        useFixedSeed = s;
+    }
+
+    public boolean getUseFixedSeed() {
+        return useFixedSeed;
+    }
+
+    public void setRandomSeed(long seed) {
+        randomSeed = seed;
+    }
+
+    public long getRandomSeed() {
+        return randomSeed;
+    }
+
+    public void setCheckDeterminism(boolean s) {
+        checkDeterminism = s;
+    }
+
+    public boolean getCheckDeterminism() {
+        return checkDeterminism;
+    }
+
     public void setExploreReplan(boolean s) {
         exploreReplan = s;
     }
@@ -370,6 +404,19 @@ public class SimulatorConfig {
 
 
 
+    private void loadCommandLineOverrides() {
+        String seed = System.getProperty(SEED_PROPERTY);
+        if (seed != null) {
+            try {
+                randomSeed = Long.parseLong(seed.trim());
+                useFixedSeed = true;
+            } catch (NumberFormatException e) {
+                System.out.println(this.toString() + "Error: seed " + seed + " is not a number, ignoring it");
+            }
+        }
+        checkDeterminism = Boolean.parseBoolean(System.getProperty(CHECK_DETERMINISM_PROPERTY));
+    }
+
     private boolean loadOldSimulatorConfig() {
         String oldConfigFilename = System.getProperty("user.dir") + "/config/lastSimulatorConfig.txt";
         File file = new File(oldConfigFilename);
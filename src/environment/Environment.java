@@ -57,6 +57,8 @@ public class Environment{
 
     public enum Status {explored, unexplored, obstacle}
     private Status status[][];
+    
+    private int version;        // Incremented whenever the status of a cell changes
 
 
     // Simple constructor for setup stage -- rows and columns only
@@ -80,9 +82,16 @@ public class Environment{
     }
     
     public void setStatus(int i, int j, Status newStat) {
+        if (status[i][j] != newStat)
+            version++;
         status[i][j] = newStat;
     }
     
+    // Used by caches of derived data (e.g. radio propagation) to detect that walls have changed
+    public int getVersion() {
+        return version;
+    }
+    
     public Status statusAt(int i, int j) {
         return status[i][j];
     }
@@ -184,16 +193,11 @@ public class Environment{
     
     public int numObstaclesOnLine(int x1, int y1, int x2, int y2) {
         int counter = 0;
-        double angle = Math.atan2(y2 - y1, x2 - x1);
-        int distance = (int)(Math.sqrt(Math.pow(y2-y1, 2) + Math.pow(x2-x1, 2)));
-        int currX, currY;
+        LineSampler line = new LineSampler(x1, y1, x2, y2);
         boolean insideWall = false; //flag to make sure a thick wall counts as one obstacle
         
-        for(int i=0; i<=distance; i++) {
-            currX = x1 + (int)(Math.cos(angle) * i);
-            currY = y1 + (int)(Math.sin(angle) * i);
-            
-            if(this.statusAt(currX, currY) == Status.obstacle){
+        while(line.next()) {
+            if(status[line.getX()][line.getY()] == Status.obstacle){
                 if (!insideWall) {
                     counter++;
                     insideWall = true;
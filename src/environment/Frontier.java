@@ -291,7 +291,8 @@ public class Frontier implements Comparable<Frontier>  {
         if (area < area_crescent_limit)
             return temp;*/
         //otherwise, return a random polygon point
-        Random rnd = new Random(Constants.RANDOM_SEED);
+        // seeded from the polygon, so the same frontier always gives the same point
+        Random rnd = new Random(areaPolygon.npoints * 31L + areaPolygon.xpoints[0] * 65537L + areaPolygon.ypoints[0]);
         int index = rnd.nextInt(areaPolygon.npoints);
         return new Point(areaPolygon.xpoints[index], areaPolygon.ypoints[index]);
     }
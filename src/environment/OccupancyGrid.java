@@ -76,6 +76,14 @@ public class OccupancyGrid {
     //used primarily to decide if we need to rebuild topological map
     private int mapCellsChanged; 
     
+    // Coarse record of where free space / obstacle bits changed, so that cached results depending on a line
+    // of cells (e.g. comm links between sample points) can tell whether they need recomputing.
+    // A change to a cell stamps every tile touching the 3x3 block around the cell, as the samples taken by
+    // numObstaclesOnLine can be up to one cell off the exact line.
+    private static final int CHANGE_TILE_SIZE = 16;
+    private int[][] tileChangeStamp;
+    private int changeStamp;
+    
     public OccupancyGrid(int newWidth, int newHeight) {
         width = newWidth;
         height = newHeight;
@@ -91,6 +99,9 @@ public class OccupancyGrid {
         cellsFreeNotKnownAtBaseNotRelayed = new HashMap<Point, Integer>();
         
         mapCellsChanged = Constants.MAP_CHANGED_THRESHOLD + 1;
+        
+        tileChangeStamp = new int[width / CHANGE_TILE_SIZE + 1][height / CHANGE_TILE_SIZE + 1];
+        changeStamp = 0;
     }
     
     public OccupancyGrid copy()
@@ -110,6 +121,31 @@ public class OccupancyGrid {
         return copyGrid;
     }
     
+    // Hash of the free space and obstacle bits of all cells, which is all a topological map is built from
+    public long getFreeAndObstacleHash()
+    {
+        int lineBits = (1 << OccGridBit.FreeSpace.ordinal()) | (1 << OccGridBit.Obstacle.ordinal());
+        long hash = 1125899906842597L;
+        hash = 31 * hash + width;
+        hash = 31 * hash + height;
+        for (int i = 0; i < width; i++)
+            for (int j = 0; j < height; j++)
+                hash = 31 * hash + (grid[i][j] & lineBits);
+        return hash;
+    }
+    
+    public boolean hasSameFreeAndObstacleCells(OccupancyGrid other)
+    {
+        if ((other.width != width) || (other.height != height))
+            return false;
+        int lineBits = (1 << OccGridBit.FreeSpace.ordinal()) | (1 << OccGridBit.Obstacle.ordinal());
+        for (int i = 0; i < width; i++)
+            for (int j = 0; j < height; j++)
+                if (((grid[i][j] ^ other.grid[i][j]) & lineBits) != 0)
+                    return false;
+        return true;
+    }
+    
     public boolean equals(Object obj) 
     {
         if (obj == null)
@@ -304,6 +340,59 @@ public class OccupancyGrid {
         return mapCellsChanged;
     }
     
+    // Incremented every time a free space or obstacle bit changes anywhere in the grid
+    public int getChangeStamp() {
+        return changeStamp;
+    }
+    
+    // True if a free space or obstacle bit that could be sampled by numObstaclesOnLine or
+    // numPossibleObstaclesOnLine between the two points changed after getChangeStamp() returned stamp
+    public boolean lineChangedSince(int stamp, int x1, int y1, int x2, int y2) {
+        if (stamp >= changeStamp)
+            return false;
+        int minY = Math.min(y1, y2);
+        int maxY = Math.max(y1, y2);
+        for (int ty = minY / CHANGE_TILE_SIZE; ty <= maxY / CHANGE_TILE_SIZE; ty++) {
+            if (ty < 0 || ty >= tileChangeStamp[0].length)
+                continue;
+            // x extent of the line within this row of tiles
+            double xa = x1;
+            double xb = x2;
+            if (y1 != y2) {
+                double yLow = Math.max(minY, ty * CHANGE_TILE_SIZE);
+                double yHigh = Math.min(maxY, (ty + 1) * CHANGE_TILE_SIZE);
+                xa = x1 + (x2 - x1) * (yLow - y1) / (y2 - y1);
+                xb = x1 + (x2 - x1) * (yHigh - y1) / (y2 - y1);
+            }
+            int txFrom = Math.max(0, (int)Math.floor((Math.min(xa, xb) - 0.001) / CHANGE_TILE_SIZE));
+            int txTo = Math.min(tileChangeStamp.length - 1, 
+                    (int)Math.floor((Math.max(xa, xb) + 0.001) / CHANGE_TILE_SIZE));
+            for (int tx = txFrom; tx <= txTo; tx++)
+                if (tileChangeStamp[tx][ty] > stamp)
+                    return true;
+        }
+        return false;
+    }
+    
+    // Tiles are CHANGE_TILE_SIZE cells square, tile (tx, ty) holds cells (tx*size .. tx*size+size-1, ...)
+    public int getChangeTileSize() {
+        return CHANGE_TILE_SIZE;
+    }
+    
+    // True if a free space or obstacle bit in or next to the tile changed after getChangeStamp() returned stamp
+    public boolean tileChangedSince(int stamp, int tileX, int tileY) {
+        return tileChangeStamp[tileX][tileY] > stamp;
+    }
+    
+    private void markChanged(int xCoord, int yCoord) {
+        changeStamp++;
+        int txTo = Math.min(tileChangeStamp.length - 1, (xCoord + 1) / CHANGE_TILE_SIZE);
+        int tyTo = Math.min(tileChangeStamp[0].length - 1, (yCoord + 1) / CHANGE_TILE_SIZE);
+        for (int tx = Math.max(0, xCoord - 1) / CHANGE_TILE_SIZE; tx <= txTo; tx++)
+            for (int ty = Math.max(0, yCoord - 1) / CHANGE_TILE_SIZE; ty <= tyTo; ty++)
+                tileChangeStamp[tx][ty] = changeStamp;
+    }
+    
     public boolean isFinalTopologicalMapCell(int xCoord, int yCoord) {
         return (getBit(xCoord, yCoord, OccGridBit.FinalTopologicalMap.ordinal()) == 1);
     }
@@ -315,6 +404,13 @@ public class OccupancyGrid {
     public void unsetFinalTopologicalMapCell(int xCoord, int yCoord) {
         setBit(xCoord, yCoord, OccupancyGrid.OccGridBit.FinalTopologicalMap, 0);
     }
+    
+    // Takes the FinalTopologicalMap bits from a grid of the same size, e.g. a copy a topological map was built on
+    public void copyFinalTopologicalMapCells(OccupancyGrid other) {
+        for (int i = 0; i < width; i++)
+            for (int j = 0; j < height; j++)
+                setBit(i, j, OccGridBit.FinalTopologicalMap, other.getBit(i, j, OccGridBit.FinalTopologicalMap.ordinal()));
+    }
         
     public boolean isKnownAtBase(int xCoord, int yCoord) {
         return (getBit(xCoord, yCoord, OccGridBit.KnownAtBase.ordinal()) == 1);
@@ -619,16 +715,15 @@ public class OccupancyGrid {
     
     public int numObstaclesOnLine(int x1, int y1, int x2, int y2) {
         int counter = 0;
-        double angle = Math.atan2(y2 - y1, x2 - x1);
-        int distance = (int)(Math.sqrt(Math.pow(y2-y1, 2) + Math.pow(x2-x1, 2)));
+        LineSampler line = new LineSampler(x1, y1, x2, y2);
         int currX, currY;
         //boolean insideWall = false; //flag to make sure a thick wall counts as one obstacle
         
-        for(int i=0; i<=distance; i++) {
-            currX = x1 + (int)(Math.cos(angle) * i);
-            currY = y1 + (int)(Math.sin(angle) * i);
+        while(line.next()) {
+            currX = line.getX();
+            currY = line.getY();
             
-            if(this.obstacleAt(currX, currY))
+            if(obstacleBitAt(currX, currY))
                 //if (!insideWall) {
                     counter++;
                 //    insideWall = true;
@@ -644,8 +739,7 @@ public class OccupancyGrid {
     
     public int numPossibleObstaclesOnLine(int x1, int y1, int x2, int y2) {
         int counter = 0;
-        double angle = Math.atan2(y2 - y1, x2 - x1);
-        int distance = (int)(Math.sqrt(Math.pow(y2-y1, 2) + Math.pow(x2-x1, 2)));
+        LineSampler line = new LineSampler(x1, y1, x2, y2);
         int currX, currY;
         boolean insideWall = false; //flag to make sure a thick wall counts as one obstacle
         
@@ -653,13 +747,13 @@ public class OccupancyGrid {
         int unknownSpaceCounter = 0;
         int unknownSpaceWallLimit = 13; //0.078m/px makes it 1 meter
         
-        for(int i=0; i<=distance; i++) {
-            currX = x1 + (int)(Math.cos(angle) * i);
-            currY = y1 + (int)(Math.sin(angle) * i);
+        while(line.next()) {
+            currX = line.getX();
+            currY = line.getY();
             
-            if(!this.freeSpaceAt(currX, currY))
+            if(!freeSpaceBitAt(currX, currY))
             {
-                if(!this.obstacleAt(currX, currY)) {
+                if(!obstacleBitAt(currX, currY)) {
                     unknownSpaceCounter++;
                     if (unknownSpaceCounter > unknownSpaceWallLimit) {
                         counter++;
@@ -682,6 +776,18 @@ public class OccupancyGrid {
         return counter;
     }
     
+    // Direct reads of the packed cell byte for the line walks above, skipping the
+    // Math.pow mask of getBit. Out of range cells go through getBit as before.
+    private boolean obstacleBitAt(int x, int y) {
+        if (!locationExists(x, y)) return obstacleAt(x, y);
+        return (grid[x][y] & (1 << OccGridBit.Obstacle.ordinal())) != 0;
+    }
+    
+    private boolean freeSpaceBitAt(int x, int y) {
+        if (!locationExists(x, y)) return freeSpaceAt(x, y);
+        return (grid[x][y] & (1 << OccGridBit.FreeSpace.ordinal())) != 0;
+    }
+    
     private void setBit(int xCoord, int yCoord, OccGridBit bit, int value) {
         setBit(xCoord, yCoord, bit.ordinal(), value);
     }
@@ -694,9 +800,14 @@ public class OccupancyGrid {
         else
             if(value == 1) return;
             else grid[xCoord][yCoord] -= (byte)(Math.pow(2,bit));
+        if (bit == OccGridBit.FreeSpace.ordinal() || bit == OccGridBit.Obstacle.ordinal())
+            markChanged(xCoord, yCoord);
     }
     
     private void setByte(int x, int y, byte value) {
+        int lineBits = (1 << OccGridBit.FreeSpace.ordinal()) | (1 << OccGridBit.Obstacle.ordinal());
+        if (((grid[x][y] ^ value) & lineBits) != 0)
+            markChanged(x, y);
         grid[x][y] = value;
     }
     
@@ -44,13 +44,14 @@ package environment;
 import agents.RealAgent;
 import config.Constants;
 import config.SimulatorConfig;
+import exploration.Profiler;
 import exploration.rendezvous.Rendezvous;
 import java.awt.*;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import path.TopologicalNode;
 
@@ -59,6 +60,10 @@ import path.TopologicalNode;
  * @author julh
  */
 public class Skeleton {
+    
+    private static final Profiler.Timer SKELETONIZE_TIMER = Profiler.timer("skeleton.skeletonize");
+    private static final Profiler.Timer FIND_SKELETON_TIMER = Profiler.timer("skeleton.findSkeleton");
+    private static final Profiler.Timer SECOND_RV_POINTS_TIMER = Profiler.timer("skeleton.secondBorderRVPoints");
 
     // SOME CODE IN THIS FILE TAKEN FROM Sudhanshu Kumar:
     // http://www.sourcecodesworld.com/source/show.asp?ScriptID=692
@@ -228,7 +233,7 @@ public class Skeleton {
     }
 
     static int[][] skeletonize(int [][] grid, int max) {
-       long realtimeStart = System.currentTimeMillis();
+       long timerStart = SKELETONIZE_TIMER.start();
        int width = grid.length;
        int height = grid[0].length;
 
@@ -257,7 +262,7 @@ public class Skeleton {
                                          found = true;
                    }
            if(!found || counter==max) {
-               System.out.println("skeletonize method took " + (System.currentTimeMillis()-realtimeStart) + "ms.");
+               SKELETONIZE_TIMER.stop(timerStart);
                return u2;
            }
            for(int i=2; i<width-2; i++)
@@ -267,7 +272,7 @@ public class Skeleton {
            counter++;
        }
 
-       System.out.println("skeletonize method took " + (System.currentTimeMillis()-realtimeStart) + "ms.");
+       SKELETONIZE_TIMER.stop(timerStart);
        return null;
     }
 
@@ -312,7 +317,7 @@ public class Skeleton {
 
     public static int[][] findSkeleton(OccupancyGrid grid, boolean treatWideOpenSpaceAsObstacle,
             boolean skeletonNearBorders) {
-        long realtimeStart = System.currentTimeMillis();
+        long timerStart = FIND_SKELETON_TIMER.start();
         int[][] freeSpaceGrid = new int[grid.width][grid.height];
 
         for(int i=0; i<grid.width; i++)
@@ -336,7 +341,7 @@ public class Skeleton {
             skeleton = skeletonize(freeSpaceGrid);
         else
             skeleton = skeletonizeNearBorders(freeSpaceGrid);
-        System.out.println("findSkeleton took " + (System.currentTimeMillis()-realtimeStart) + "ms.");
+        FIND_SKELETON_TIMER.stop(timerStart);
         return skeleton;
     }
 
@@ -358,63 +363,146 @@ public class Skeleton {
     //</editor-fold>
     
     public static LinkedList<Point> findKeyPoints(int[][] skeleton, OccupancyGrid occGrid) {
-        LinkedList<Point> rvPts = new LinkedList<Point>();
-        boolean add;
+        PointBuckets rvPts = new PointBuckets(skeleton.length, skeleton[0].length, 40);
         
         // Pass 1:  find key points (junctions)
         for(int i=2; i<skeleton.length-2; i++)
             for(int j=2; j<skeleton[0].length-2; j++)
             {
                 if(numNonzeroNeighbors(skeleton, i, j) >= 3 && neighborTraversal(skeleton, i, j) >= 3 && skeleton[i][j] != 0)
-                    rvPts.add(new Point(i,j));
+                    rvPts.add(i, j);
                 //if (numNonzeroNeighbors(skeleton, i, j) == 1 && skeleton[i][j] != 0)
-                //    rvPts.add(new Point(i,j));
+                //    rvPts.add(i, j);
             }
         
-      // Pass 2:  fill in gaps
-        LinkedList<Point> pts = gridToList(skeleton);
-        boolean addToRVlist;
-        for(Point p: pts) {
-            // First check if it's an endpoint
-            if(numNonzeroNeighbors(skeleton, p.x, p.y) < 2) {
-                rvPts.add(p);
-                continue;
+      // Pass 2:  fill in gaps (skeleton points in gridToList order)
+        for(int j=0; j<skeleton[0].length; j++)
+            for(int i=0; i<skeleton.length; i++) {
+                if(skeleton[i][j] != 1)
+                    continue;
+                // First check if it's an endpoint, second check if it's far away from all other rv points
+                if(numNonzeroNeighbors(skeleton, i, j) < 2 || !rvPts.anyWithin(i, j, 40, -1))
+                    rvPts.add(i, j);
             }
-                    
-            // Second check if it's far away from all other rv points
-            addToRVlist = true;
-            for(Point q: rvPts)
-                if(p.distance(q) < 40) {
-                    addToRVlist = false;
-                    break;
-                }
-            if(addToRVlist)
-                rvPts.add(p);
-        }
 
-        Point p;
+        // Pass 3:  prune points too close to another rv point or too close to an obstacle.
+        // Points are checked from last to first, against all points not removed so far.
+        PointBuckets pruned = new PointBuckets(skeleton.length, skeleton[0].length, 20);
+        for(int k=0; k<rvPts.size(); k++)
+            pruned.add(rvPts.getX(k), rvPts.getY(k));
+        for(int k=pruned.size()-1; k>=0; k--) {
+            if(occGrid.obstacleWithinDistance(pruned.getX(k), pruned.getY(k), Constants.WALL_DISTANCE) ||
+               pruned.anyWithin(pruned.getX(k), pruned.getY(k), 20, k))
+                pruned.remove(k);
+        }
         
-        // Pass 3:  prune points too close to another rv point or too close to an obstacle
-        for(int i=rvPts.size()-1; i>=0; i--) {
-            p = rvPts.get(i);
-            if(occGrid.obstacleWithinDistance(p.x, p.y, Constants.WALL_DISTANCE)) {
-                rvPts.remove(i);
-                continue;
+        return pruned.toList();
+    }
+    
+    /**
+     * Points kept in int arrays and bucketed on a uniform grid, so finding points near a location
+     * only looks at the neighbouring buckets instead of the whole list.
+     * @author Victor
+     */
+    private static class PointBuckets {
+        private final int bucketSize;
+        private final int bucketsX;
+        private final int bucketsY;
+        private final int[] head;       // first point in each bucket, -1 if empty
+        private int[] next;             // next point in the same bucket
+        private int[] xs;
+        private int[] ys;
+        private boolean[] removed;
+        private int size;
+        
+        PointBuckets(int width, int height, int bucketSize) {
+            this.bucketSize = bucketSize;
+            bucketsX = width / bucketSize + 1;
+            bucketsY = height / bucketSize + 1;
+            head = new int[bucketsX * bucketsY];
+            Arrays.fill(head, -1);
+            next = new int[64];
+            xs = new int[64];
+            ys = new int[64];
+            removed = new boolean[64];
+        }
+        
+        void add(int x, int y) {
+            if (size == xs.length) {
+                next = Arrays.copyOf(next, size * 2);
+                xs = Arrays.copyOf(xs, size * 2);
+                ys = Arrays.copyOf(ys, size * 2);
+                removed = Arrays.copyOf(removed, size * 2);
             }
-            for(int j=rvPts.size()-1; j>=0; j--)
-                if(p.distance(rvPts.get(j)) < 20 && i!=j) {
-                    rvPts.remove(i);
-                    break;
-                }
+            int bucket = (x / bucketSize) * bucketsY + y / bucketSize;
+            xs[size] = x;
+            ys[size] = y;
+            next[size] = head[bucket];
+            head[bucket] = size;
+            size++;
         }
         
-        return rvPts;
+        int size() {
+            return size;
+        }
+        
+        int getX(int i) {
+            return xs[i];
+        }
+        
+        int getY(int i) {
+            return ys[i];
+        }
+        
+        void remove(int i) {
+            removed[i] = true;
+        }
+        
+        // True if a point other than point 'except' is closer than distance (at most bucketSize) to (x,y)
+        boolean anyWithin(int x, int y, int distance, int except) {
+            int bx = x / bucketSize;
+            int by = y / bucketSize;
+            for (int i = Math.max(0, bx - 1); i <= Math.min(bucketsX - 1, bx + 1); i++)
+                for (int j = Math.max(0, by - 1); j <= Math.min(bucketsY - 1, by + 1); j++)
+                    for (int k = head[i * bucketsY + j]; k != -1; k = next[k]) {
+                        if (k == except || removed[k])
+                            continue;
+                        int dx = xs[k] - x;
+                        int dy = ys[k] - y;
+                        if (dx * dx + dy * dy < distance * distance)
+                            return true;
+                    }
+            return false;
+        }
+        
+        LinkedList<Point> toList() {
+            LinkedList<Point> list = new LinkedList<Point>();
+            for (int i = 0; i < size; i++)
+                if (!removed[i])
+                    list.add(new Point(xs[i], ys[i]));
+            return list;
+        }
     }
     
+    // Neighbour offsets in the order the area vote breaks ties: nw, n, ne, w, e, sw, s, se
+    private static final int[] VOTE_DX = {-1, 0, 1, -1, 1, -1, 0, 1};
+    private static final int[] VOTE_DY = {-1, -1, -1, 0, 0, 1, 1, 1};
+    // Order in which neighbours of a key point, and of any other cell, are queued
+    private static final int[] SEED_DX = {-1, 1, 0, 0, -1, -1, 1, 1};
+    private static final int[] SEED_DY = {0, 0, -1, 1, -1, 1, 1, -1};
+    private static final int[] GROW_DX = {-1, 1, 0, 0, -1, -1, 1, 1};
+    private static final int[] GROW_DY = {0, 0, -1, 1, -1, 1, -1, 1};
+    
     public static int[][] fillKeyAreas(OccupancyGrid occGrid, LinkedList<Point> keyPoints, HashMap<Integer, TopologicalNode> nodes)
     {
-        int[][] areaGrid = new int[occGrid.width][occGrid.height];
-        LinkedHashMap<Point, Boolean> pointsOfInterest = new LinkedHashMap<Point, Boolean>();
+        int width = occGrid.width;
+        int height = occGrid.height;
+        int[][] areaGrid = new int[width][height];
+        // FIFO of cell indices (x * height + y) waiting to be assigned; a cell is queued at most once at a time
+        int[] queue = new int[width * height];
+        boolean[] queued = new boolean[width * height];
+        int head = 0;
+        int count = 0;
         
         //Initialize areaGrid - set unexplored areas to UNEXPLORED_NODE_ID, obstacles to -1, free space to 0.
         for (int i = 0; i < areaGrid.length; i++)
@@ -425,7 +513,7 @@ public class Skeleton {
                     areaGrid[i][j] = Constants.UNEXPLORED_NODE_ID; //unexplored space
                 else areaGrid[i][j] = 0;
         
-        // initialize the keypoint of each Node to the node's ID; add the immediate neighbour cells to "points of interest" list
+        // initialize the keypoint of each Node to the node's ID; add the immediate neighbour cells to the queue
         int index = 0;
         for (Point p: keyPoints)
         {     
@@ -433,187 +521,72 @@ public class Skeleton {
             if ((areaGrid[p.x][p.y] >= 0) && (areaGrid[p.x][p.y] < Constants.UNEXPLORED_NODE_ID))
             {
                 areaGrid[p.x][p.y] = index;
-                if (areaGrid[p.x - 1][p.y] == 0)
-                    pointsOfInterest.put(new Point(p.x - 1, p.y), true);
-                if (areaGrid[p.x + 1][p.y] == 0)
-                    pointsOfInterest.put(new Point(p.x + 1, p.y), true);
-                if (areaGrid[p.x][p.y - 1] == 0)
-                    pointsOfInterest.put(new Point(p.x, p.y - 1), true);
-                if (areaGrid[p.x][p.y + 1] == 0)
-                    pointsOfInterest.put(new Point(p.x, p.y + 1), true);
-                if (areaGrid[p.x - 1][p.y - 1] == 0)
-                    pointsOfInterest.put(new Point(p.x - 1, p.y - 1), true);
-                if (areaGrid[p.x - 1][p.y + 1] == 0)
-                    pointsOfInterest.put(new Point(p.x - 1, p.y + 1), true);
-                if (areaGrid[p.x + 1][p.y + 1] == 0)
-                    pointsOfInterest.put(new Point(p.x + 1, p.y + 1), true);
-                if (areaGrid[p.x + 1][p.y - 1] == 0)
-                    pointsOfInterest.put(new Point(p.x + 1, p.y - 1), true);
+                for (int d = 0; d < 8; d++)
+                {
+                    int x = p.x + SEED_DX[d];
+                    int y = p.y + SEED_DY[d];
+                    int cell = x * height + y;
+                    if (areaGrid[x][y] == 0 && !queued[cell])
+                    {
+                        queued[cell] = true;
+                        queue[(head + count++) % queue.length] = cell;
+                    }
+                }
             }
         }
         int maxQueueSize;
+        int[] votes = new int[8];
         
         maxQueueSize = 0;
-        while (!pointsOfInterest.isEmpty())
+        while (count > 0)
         {
-            if (pointsOfInterest.size() > maxQueueSize)
-                maxQueueSize = pointsOfInterest.size();
-            Point p = pointsOfInterest.keySet().iterator().next();
-            pointsOfInterest.remove(p);
-            if (areaGrid[p.x][p.y] == 0) //cell unassigned to any node
+            if (count > maxQueueSize)
+                maxQueueSize = count;
+            int cell = queue[head];
+            head = (head + 1) % queue.length;
+            count--;
+            queued[cell] = false;
+            int px = cell / height;
+            int py = cell % height;
+            if (areaGrid[px][py] == 0) //cell unassigned to any node
             {
                 // calculate what area most surrounding cells belong to
-                int nw = 0;
-                int n = 0;
-                int ne = 0;
-                int w = 0;
-                int e = 0;
-                int sw = 0;
-                int s = 0;
-                int se = 0;
-
-                if ((areaGrid[p.x - 1][p.y - 1] > 0) && (areaGrid[p.x - 1][p.y - 1] < Constants.UNEXPLORED_NODE_ID))
-                {
-                    if (areaGrid[p.x][p.y - 1] == areaGrid[p.x - 1][p.y - 1]) nw++;
-                    if (areaGrid[p.x + 1][p.y - 1] == areaGrid[p.x - 1][p.y - 1]) nw++;
-                    if (areaGrid[p.x - 1][p.y] == areaGrid[p.x - 1][p.y - 1]) nw++;
-                    if (areaGrid[p.x + 1][p.y] == areaGrid[p.x - 1][p.y - 1]) nw++;
-                    if (areaGrid[p.x - 1][p.y + 1] == areaGrid[p.x - 1][p.y - 1]) nw++;
-                    if (areaGrid[p.x][p.y + 1] == areaGrid[p.x - 1][p.y - 1]) nw++;
-                    if (areaGrid[p.x + 1][p.y + 1] == areaGrid[p.x - 1][p.y - 1]) nw++;
-                } else
-                    nw = -1;
-                if ((areaGrid[p.x][p.y - 1] > 0) && (areaGrid[p.x][p.y - 1] < Constants.UNEXPLORED_NODE_ID))
+                int best = 0;
+                for (int d = 0; d < 8; d++)
                 {
-                    if (areaGrid[p.x - 1][p.y - 1] == areaGrid[p.x][p.y - 1]) n++;
-                    if (areaGrid[p.x + 1][p.y - 1] == areaGrid[p.x][p.y - 1]) n++;
-                    if (areaGrid[p.x - 1][p.y] == areaGrid[p.x][p.y - 1]) n++;
-                    if (areaGrid[p.x + 1][p.y] == areaGrid[p.x][p.y - 1]) n++;
-                    if (areaGrid[p.x - 1][p.y + 1] == areaGrid[p.x][p.y - 1]) n++;
-                    if (areaGrid[p.x][p.y + 1] == areaGrid[p.x][p.y - 1]) n++;
-                    if (areaGrid[p.x + 1][p.y + 1] == areaGrid[p.x][p.y - 1]) n++;
-                } else
-                    n = -1;
-                if ((areaGrid[p.x + 1][p.y - 1] > 0) && (areaGrid[p.x + 1][p.y - 1] < Constants.UNEXPLORED_NODE_ID))
-                {
-                    if (areaGrid[p.x - 1][p.y - 1] == areaGrid[p.x + 1][p.y - 1]) ne++;
-                    if (areaGrid[p.x][p.y - 1] == areaGrid[p.x + 1][p.y - 1]) ne++;
-                    if (areaGrid[p.x - 1][p.y] == areaGrid[p.x + 1][p.y - 1]) ne++;
-                    if (areaGrid[p.x + 1][p.y] == areaGrid[p.x + 1][p.y - 1]) ne++;
-                    if (areaGrid[p.x - 1][p.y + 1] == areaGrid[p.x + 1][p.y - 1]) ne++;
-                    if (areaGrid[p.x][p.y + 1] == areaGrid[p.x + 1][p.y - 1]) ne++;
-                    if (areaGrid[p.x + 1][p.y + 1] == areaGrid[p.x + 1][p.y - 1]) ne++;
-                } else
-                    ne = -1;
-                if ((areaGrid[p.x - 1][p.y] > 0) && (areaGrid[p.x - 1][p.y] < Constants.UNEXPLORED_NODE_ID))
-                {
-                    if (areaGrid[p.x - 1][p.y - 1] == areaGrid[p.x - 1][p.y]) w++;
-                    if (areaGrid[p.x][p.y - 1] == areaGrid[p.x - 1][p.y]) w++;
-                    if (areaGrid[p.x + 1][p.y - 1] == areaGrid[p.x - 1][p.y]) w++;
-                    if (areaGrid[p.x + 1][p.y] == areaGrid[p.x - 1][p.y]) w++;
-                    if (areaGrid[p.x - 1][p.y + 1] == areaGrid[p.x - 1][p.y]) w++;
-                    if (areaGrid[p.x][p.y + 1] == areaGrid[p.x - 1][p.y]) w++;
-                    if (areaGrid[p.x + 1][p.y + 1] == areaGrid[p.x - 1][p.y]) w++;
-                } else
-                    w = -1;
-                if ((areaGrid[p.x + 1][p.y] > 0) && (areaGrid[p.x + 1][p.y] < Constants.UNEXPLORED_NODE_ID))
-                {
-                    if (areaGrid[p.x - 1][p.y - 1] == areaGrid[p.x + 1][p.y]) e++;
-                    if (areaGrid[p.x][p.y - 1] == areaGrid[p.x + 1][p.y]) e++;
-                    if (areaGrid[p.x + 1][p.y - 1] == areaGrid[p.x + 1][p.y]) e++;
-                    if (areaGrid[p.x - 1][p.y] == areaGrid[p.x + 1][p.y]) e++;
-                    if (areaGrid[p.x - 1][p.y + 1] == areaGrid[p.x + 1][p.y]) e++;
-                    if (areaGrid[p.x][p.y + 1] == areaGrid[p.x + 1][p.y]) e++;
-                    if (areaGrid[p.x + 1][p.y + 1] == areaGrid[p.x + 1][p.y]) e++;
-                } else
-                    e = -1;
-                if ((areaGrid[p.x - 1][p.y + 1] > 0) && (areaGrid[p.x - 1][p.y + 1] < Constants.UNEXPLORED_NODE_ID))
-                {
-                    if (areaGrid[p.x - 1][p.y - 1] == areaGrid[p.x - 1][p.y + 1]) sw++;
-                    if (areaGrid[p.x][p.y - 1] == areaGrid[p.x - 1][p.y + 1]) sw++;
-                    if (areaGrid[p.x + 1][p.y - 1] == areaGrid[p.x - 1][p.y + 1]) sw++;
-                    if (areaGrid[p.x - 1][p.y] == areaGrid[p.x - 1][p.y + 1]) sw++;
-                    if (areaGrid[p.x + 1][p.y] == areaGrid[p.x - 1][p.y + 1]) sw++;
-                    if (areaGrid[p.x][p.y + 1] == areaGrid[p.x - 1][p.y + 1]) sw++;
-                    if (areaGrid[p.x + 1][p.y + 1] == areaGrid[p.x - 1][p.y + 1]) sw++;
-                } else
-                    sw = -1;
-
-                if ((areaGrid[p.x][p.y + 1] > 0) && (areaGrid[p.x][p.y + 1] < Constants.UNEXPLORED_NODE_ID))
-                {
-                    if (areaGrid[p.x - 1][p.y - 1] == areaGrid[p.x][p.y + 1]) s++;
-                    if (areaGrid[p.x][p.y - 1] == areaGrid[p.x][p.y + 1]) s++;
-                    if (areaGrid[p.x + 1][p.y - 1] == areaGrid[p.x][p.y + 1]) s++;
-                    if (areaGrid[p.x - 1][p.y] == areaGrid[p.x][p.y + 1]) s++;
-                    if (areaGrid[p.x + 1][p.y] == areaGrid[p.x][p.y + 1]) s++;
-                    if (areaGrid[p.x - 1][p.y + 1] == areaGrid[p.x][p.y + 1]) s++;
-                    if (areaGrid[p.x + 1][p.y + 1] == areaGrid[p.x][p.y + 1]) s++;
-                } else
-                    s = -1;
-
-                if ((areaGrid[p.x + 1][p.y + 1] > 0) && (areaGrid[p.x + 1][p.y + 1] < Constants.UNEXPLORED_NODE_ID))
-                {
-                    if (areaGrid[p.x - 1][p.y - 1] == areaGrid[p.x + 1][p.y + 1]) se++;
-                    if (areaGrid[p.x][p.y - 1] == areaGrid[p.x + 1][p.y + 1]) se++;
-                    if (areaGrid[p.x + 1][p.y - 1] == areaGrid[p.x + 1][p.y + 1]) se++;
-                    if (areaGrid[p.x - 1][p.y] == areaGrid[p.x + 1][p.y + 1]) se++;
-                    if (areaGrid[p.x + 1][p.y] == areaGrid[p.x + 1][p.y + 1]) se++;
-                    if (areaGrid[p.x - 1][p.y + 1] == areaGrid[p.x + 1][p.y + 1]) se++;
-                    if (areaGrid[p.x][p.y + 1] == areaGrid[p.x + 1][p.y + 1]) se++;
-                } else
-                    se = -1;
-
-                if (nw >= n && nw >= ne && nw >= w && nw >= e && nw >= sw && nw >= s && nw >= se)
-                    areaGrid[p.x][p.y] = areaGrid[p.x - 1][p.y - 1];
-                else if (n >= nw && n >= ne && n >= w && n >= e && n >= sw && n >= s && n >= se)
-                    areaGrid[p.x][p.y] = areaGrid[p.x][p.y - 1];
-                else if (ne >= nw && ne >= n && ne >= w && ne >= e && ne >= sw && ne >= s && ne >= se)
-                    areaGrid[p.x][p.y] = areaGrid[p.x + 1][p.y - 1];
-                else if (w >= nw && w >= n && w >= ne && w >= e && w >= sw && w >= s && w >= se)
-                    areaGrid[p.x][p.y] = areaGrid[p.x - 1][p.y];
-                else if (e >= nw && e >= n && e >= ne && e >= w && e >= sw && e >= s && e >= se)
-                    areaGrid[p.x][p.y] = areaGrid[p.x + 1][p.y];
-                else if (sw >= nw && sw >= n && sw >= ne && sw >= w && sw >= e && sw >= s && sw >= se)
-                    areaGrid[p.x][p.y] = areaGrid[p.x - 1][p.y + 1];
-                else if (s >= nw && s >= n && s >= ne && s >= w && s >= e && s >= sw && s >= se)
-                    areaGrid[p.x][p.y] = areaGrid[p.x][p.y + 1];
-                else if (se >= nw && se >= n && se >= ne && se >= w && se >= e && se >= sw && se>= s)
-                    areaGrid[p.x][p.y] = areaGrid[p.x + 1][p.y + 1];
-                if (areaGrid[p.x][p.y] == -1) areaGrid[p.x][p.y] = 0;
-                else if ((areaGrid[p.x][p.y] > 0) && (areaGrid[p.x][p.y] < Constants.UNEXPLORED_NODE_ID)) {
-                    occGrid.setFinalTopologicalMapCell(p.x, p.y);
-                    nodes.get(areaGrid[p.x][p.y]).addCell(p);
+                    int area = areaGrid[px + VOTE_DX[d]][py + VOTE_DY[d]];
+                    if ((area > 0) && (area < Constants.UNEXPLORED_NODE_ID))
+                    {
+                        votes[d] = 0;
+                        for (int k = 0; k < 8; k++)
+                            if (k != d && areaGrid[px + VOTE_DX[k]][py + VOTE_DY[k]] == area)
+                                votes[d]++;
+                    } else
+                        votes[d] = -1;
+                    if (votes[d] > votes[best])
+                        best = d;
                 }
-                    
-
-                /*if (pointsOfInterest.size() > 1000000)
+                areaGrid[px][py] = areaGrid[px + VOTE_DX[best]][py + VOTE_DY[best]];
+                
+                if (areaGrid[px][py] == -1) areaGrid[px][py] = 0;
+                else if ((areaGrid[px][py] > 0) && (areaGrid[px][py] < Constants.UNEXPLORED_NODE_ID)) {
+                    occGrid.setFinalTopologicalMapCell(px, py);
+                    nodes.get(areaGrid[px][py]).addCell(new Point(px, py));
+                }
+                
+                if (count < 10000000)
                 {
-                    // there have to be duplicates, let's prune
-                    for (Point pnt: pointsOfInterest)
+                    for (int d = 0; d < 8; d++)
                     {
-                        if (areaGrid[pnt.x][pnt.y] != 0)
-                            pointsOfInterest.remove(pnt);
+                        int x = px + GROW_DX[d];
+                        int y = py + GROW_DY[d];
+                        int next = x * height + y;
+                        if (areaGrid[x][y] == 0 && !queued[next])
+                        {
+                            queued[next] = true;
+                            queue[(head + count++) % queue.length] = next;
+                        }
                     }
-                }*/
-
-                if (pointsOfInterest.size() < 10000000)
-                {
-                    if (areaGrid[p.x - 1][p.y] == 0)
-                        pointsOfInterest.put(new Point(p.x - 1, p.y), true);
-                    if (areaGrid[p.x + 1][p.y] == 0)
-                        pointsOfInterest.put(new Point(p.x + 1, p.y), true);
-                    if (areaGrid[p.x][p.y - 1] == 0)
-                        pointsOfInterest.put(new Point(p.x, p.y - 1), true);
-                    if (areaGrid[p.x][p.y + 1] == 0)
-                        pointsOfInterest.put(new Point(p.x, p.y + 1), true);
-                    if (areaGrid[p.x - 1][p.y - 1] == 0)
-                        pointsOfInterest.put(new Point(p.x - 1, p.y - 1), true);
-                    if (areaGrid[p.x - 1][p.y + 1] == 0)
-                        pointsOfInterest.put(new Point(p.x - 1, p.y + 1), true);
-                    if (areaGrid[p.x + 1][p.y - 1] == 0)
-                        pointsOfInterest.put(new Point(p.x + 1, p.y - 1), true);
-                    if (areaGrid[p.x + 1][p.y + 1] == 0)
-                        pointsOfInterest.put(new Point(p.x + 1, p.y + 1), true);
                 } else
                 {
                     System.out.println("!!!!TOPOLOGICAL map might contain errors, pointsofinterest queue exhausted!");
@@ -621,24 +594,6 @@ public class Skeleton {
             }
         }
         System.out.println("Max queue size: " + maxQueueSize);
-
-        //Are there some areas we haven't assigned to a node yet?
-        /*for (int i = 1; i < areaGrid.length-1; i++)
-            for (int j = 1; j < areaGrid[0].length-1; j++)
-            {
-                if (areaGrid[i][j] == 0)
-                {
-                    if ((areaGrid[i - 1][j] > 0) 
-                        || (areaGrid[i + 1][j] > 0)
-                        || (areaGrid[i][j - 1] > 0)
-                        || (areaGrid[i][j + 1] > 0)
-                        || (areaGrid[i - 1][j + 1] > 0)
-                        || (areaGrid[i - 1][j - 1] > 0)
-                        || (areaGrid[i + 1][j - 1] > 0)
-                        || (areaGrid[i + 1][j + 1] > 0))
-                        pointsOfInterest.add(new Point(i, j));  
-                }
-            }*/
         
         return areaGrid;
     }
@@ -666,69 +621,82 @@ public class Skeleton {
         return borderPts;
     }
     
-    public static boolean withinDistanceBySkeleton(int[][] skeleton, Point a, Point b, Point came_from, int distance, long timeStart)
+    // True if b can be reached from a in at most distance 4-connected steps along the skeleton
+    public static boolean withinDistanceBySkeleton(int[][] skeleton, Point a, Point b, int distance)
     {
-        // just to be 100% sure we don't freeze here
-        long curRealTime = System.currentTimeMillis();
-        if (curRealTime - timeStart > Constants.MAX_TIME_DISTANCE_BY_SKELETON) return a.equals(b);
-        
-        if (distance == 0) return a.equals(b);
-        if (a.equals(b)) return true;
-        if ((skeleton[a.x][a.y] != 1) || (skeleton[b.x][b.y] != 1)) return false;
-        
-        boolean top = false;
-        //boolean topr = false;
-        boolean right = false;
-        //boolean bottomr = false;
-        boolean bottom = false;
-        //boolean bottoml = false;
-        boolean left = false;
-        //boolean topl = false;
-        
-        Point child = new Point(a.x, a.y-1);
-        if (!child.equals(came_from) && (skeleton[child.x][child.y] == 1))
-            top = withinDistanceBySkeleton(skeleton, child, b, a, distance-1, timeStart);
-        
-        /*child = new Point(a.x+1, a.y-1);
-        if (!child.equals(came_from) && (skeleton[child.x][child.y] == 1))
-            topr = withinDistanceBySkeleton(skeleton, child, b, a, distance-1);*/
-        
-        child = new Point(a.x+1, a.y);
-        if (!child.equals(came_from) && (skeleton[child.x][child.y] == 1))
-            right = withinDistanceBySkeleton(skeleton, child, b, a, distance-1, timeStart);
-        
-        /*child = new Point(a.x+1, a.y+1);
-        if (!child.equals(came_from) && (skeleton[child.x][child.y] == 1))
-            bottomr = withinDistanceBySkeleton(skeleton, child, b, a, distance-1);*/
-        
-        child = new Point(a.x, a.y+1);
-        if (!child.equals(came_from) && (skeleton[child.x][child.y] == 1))
-            bottom = withinDistanceBySkeleton(skeleton, child, b, a, distance-1, timeStart);
-        
-        /*child = new Point(a.x-1, a.y+1);
-        if (!child.equals(came_from) && (skeleton[child.x][child.y] == 1))
-            bottoml = withinDistanceBySkeleton(skeleton, child, b, a, distance-1);*/
-        
-        child = new Point(a.x-1, a.y);
-        if (!child.equals(came_from) && (skeleton[child.x][child.y] == 1))
-            left = withinDistanceBySkeleton(skeleton, child, b, a, distance-1, timeStart);
-        
-        /*child = new Point(a.x-1, a.y-1);
-        if (!child.equals(came_from) && (skeleton[child.x][child.y] == 1))
-            topl = withinDistanceBySkeleton(skeleton, child, b, a, distance-1);*/
-        
-        /*child = new Point(a.x+1, a.y-1);
-        if (!child.equals(came_from) && (skeleton[child.x][child.y] == 1))
-            topr = withinDistanceBySkeleton(skeleton, child, b, a, distance-1);*/
+        return new SkeletonSearch(skeleton).withinDistance(a, b, distance);
+    }
+    
+    /**
+     * Breadth first search along skeleton cells (value 1), bounded by a maximum number of steps.
+     * Visited cells are marked with a stamp that changes for each query, so one instance answers
+     * many queries on the same skeleton without clearing anything.
+     * @author Victor
+     */
+    private static class SkeletonSearch {
+        private final int[][] skeleton;
+        private final int width;
+        private final int height;
+        private final int[] visited;    // stamp of the last query that reached the cell
+        private int stamp;
+        private int[] queue;
+        private int[] depth;
         
+        SkeletonSearch(int[][] skeleton) {
+            this.skeleton = skeleton;
+            width = skeleton.length;
+            height = skeleton[0].length;
+            visited = new int[width * height];
+            queue = new int[64];
+            depth = new int[64];
+        }
         
-        return top || right || bottom || left;// || topl || topr || bottomr || bottoml;         
+        boolean withinDistance(Point a, Point b, int distance) {
+            if (a.equals(b)) return true;
+            if (distance <= 0) return false;
+            if ((skeleton[a.x][a.y] != 1) || (skeleton[b.x][b.y] != 1)) return false;
+            if (Math.abs(a.x - b.x) + Math.abs(a.y - b.y) > distance) return false;
+            
+            stamp++;
+            int head = 0;
+            int tail = 0;
+            queue[tail] = a.x * height + a.y;
+            depth[tail++] = 0;
+            visited[a.x * height + a.y] = stamp;
+            while (head < tail) {
+                int cell = queue[head];
+                int d = depth[head++] + 1;
+                int x = cell / height;
+                int y = cell % height;
+                for (int k = 0; k < 4; k++) {
+                    int nx = x + ((k == 1) ? 1 : (k == 3) ? -1 : 0);
+                    int ny = y + ((k == 0) ? -1 : (k == 2) ? 1 : 0);
+                    if (nx < 0 || ny < 0 || nx >= width || ny >= height || skeleton[nx][ny] != 1)
+                        continue;
+                    if (nx == b.x && ny == b.y)
+                        return true;
+                    int next = nx * height + ny;
+                    // cells from which b is out of reach in the steps left are not worth queueing
+                    if (visited[next] == stamp || d + Math.abs(nx - b.x) + Math.abs(ny - b.y) > distance)
+                        continue;
+                    visited[next] = stamp;
+                    if (tail == queue.length) {
+                        queue = Arrays.copyOf(queue, tail * 2);
+                        depth = Arrays.copyOf(depth, tail * 2);
+                    }
+                    queue[tail] = next;
+                    depth[tail++] = d;
+                }
+            }
+            return false;
+        }
     }
     
     public static LinkedList<Point> findBorderRVPoints(int[][] skeleton, OccupancyGrid occGrid) {
         int DISTANCE = 40;
                 
         LinkedList<Point> rvPts = new LinkedList<Point>();
+        SkeletonSearch skeletonSearch = new SkeletonSearch(skeleton);
         boolean add;
         
         // Pass 1:  find key points (junctions)
@@ -752,8 +720,7 @@ public class Skeleton {
             addToRVlist = true;
             for(Point q: rvPts)
                 if(p.distance(q) < DISTANCE) {
-                    long realtimeStartSkeleton = System.currentTimeMillis();
-                    if(withinDistanceBySkeleton(skeleton, p, q, p, DISTANCE, realtimeStartSkeleton)) {
+                    if(skeletonSearch.withinDistance(p, q, DISTANCE)) {
                         addToRVlist = false;
                         break;
                     }
@@ -773,9 +740,8 @@ public class Skeleton {
             }
             for(int j=rvPts.size()-1; j>=0; j--)
                 if(p.distance(rvPts.get(j)) < DISTANCE && i!=j) {
-                    long realtimeStartSkeleton = System.currentTimeMillis();
                     if ((p.distance(rvPts.get(j)) <= 10) || 
-                            (withinDistanceBySkeleton(skeleton, p, rvPts.get(j), p, DISTANCE, realtimeStartSkeleton)))
+                            (skeletonSearch.withinDistance(p, rvPts.get(j), DISTANCE)))
                     {
                         rvPts.remove(i);
                         break;
@@ -791,7 +757,7 @@ public class Skeleton {
     public static LinkedList<Point> findSecondBorderRVPoints(LinkedList<Point> borderRVPoints, RealAgent agent, Point goal) {
         LinkedList<Point> secondRVPoints = new LinkedList<Point>();
         System.out.println("Border points: " + borderRVPoints.size());
-        long realtimeStart = System.currentTimeMillis();
+        long timerStart = SECOND_RV_POINTS_TIMER.start();
         int counter = 1;
         for (Point rvPoint : borderRVPoints)
         {
@@ -799,7 +765,7 @@ public class Skeleton {
             secondRVPoints.add(Rendezvous.findSecondRVPoint(agent, rvPoint, goal, Constants.MIN_RV_THROUGH_WALL_ACCEPT_RATIO));
             counter++;
         }
-        System.out.println("Checked all candidate points, took " + (System.currentTimeMillis()-realtimeStart) + "ms.");
+        SECOND_RV_POINTS_TIMER.stop(timerStart);
         return secondRVPoints;
     }
     
@@ -45,13 +45,19 @@ import agents.RealAgent;
 import communication.PropModel1;
 import config.Constants;
 import config.RobotConfig;
+import exploration.Profiler;
+import exploration.WorkerPool;
 import exploration.rendezvous.Rendezvous;
 import java.awt.Point;
 import java.awt.Polygon;
 import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.Map;
 import path.Path;
+import path.TopologicalGraph;
 import path.TopologicalNode;
 
 /**
@@ -66,6 +72,7 @@ public class TopologicalMap {
     private LinkedList<Point> borderPoints;
     private int areaGrid[][];
     private HashMap<Integer, TopologicalNode> topologicalNodes;
+    private TopologicalGraph topologicalGraph;
     private Path path;
     
     private int skeletonGridBorder[][];
@@ -74,7 +81,16 @@ public class TopologicalMap {
     private LinkedList<Point> secondKeyPointsBorder;
     
     //cached paths between nodes; first param is two points, start and finish
-    private static HashMap<Rectangle, Path> pathCache = new HashMap<Rectangle, Path>();
+    //shared by all agents, and maps may be built by background threads
+    private static Map<Rectangle, Path> pathCache = Collections.synchronizedMap(new HashMap<Rectangle, Path>());
+    //which agent caches a path first depends on thread timing, so runs that must be repeatable do not use it
+    private static volatile boolean usePathCache = true;
+    
+    private static final Profiler.Timer SKELETON_TIMER = Profiler.timer("topo.generateSkeleton");
+    private static final Profiler.Timer KEY_POINTS_TIMER = Profiler.timer("topo.findKeyPoints");
+    private static final Profiler.Timer KEY_AREAS_TIMER = Profiler.timer("topo.fillKeyAreas");
+    private static final Profiler.Timer BORDER_POINTS_TIMER = Profiler.timer("topo.borderPoints");
+    private static final Profiler.Timer NODE_PATHS_TIMER = Profiler.timer("topo.interNodePaths");
     
     public TopologicalMap(OccupancyGrid occGrid)
     {
@@ -87,6 +103,19 @@ public class TopologicalMap {
         this.occGrid = occGrid;
     }
     
+    // Uses the skeleton, key areas and node graph of a map built elsewhere (see TopologicalMapStore).
+    // They are shared, not copied; building this map again replaces them without changing the other map.
+    public void shareBuild(TopologicalMap built)
+    {
+        skeletonGrid = built.skeletonGrid;
+        skeletonPoints = built.skeletonPoints;
+        keyPoints = built.keyPoints;
+        borderPoints = built.borderPoints;
+        areaGrid = built.areaGrid;
+        topologicalNodes = built.topologicalNodes;
+        topologicalGraph = built.topologicalGraph;
+    }
+    
     public OccupancyGrid getGrid()
     {
         return this.occGrid;
@@ -94,17 +123,17 @@ public class TopologicalMap {
     
     public void generateSkeleton()
     {
-        long realtimeStart = System.currentTimeMillis();
+        long timerStart = SKELETON_TIMER.start();
         skeletonGrid = Skeleton.skeletonize(Skeleton.findSkeleton(occGrid));
-        System.out.println("Skeletonize & findSkeleton took " + (System.currentTimeMillis()-realtimeStart) + "ms.");
-        realtimeStart = System.currentTimeMillis();
         skeletonPoints = Skeleton.gridToList(skeletonGrid);
-        System.out.println("Skeletonize gridToList took " + (System.currentTimeMillis()-realtimeStart) + "ms.");
+        SKELETON_TIMER.stop(timerStart);
     }
     
     public void findKeyPoints()
     {
+        long timerStart = KEY_POINTS_TIMER.start();
         keyPoints = Skeleton.findKeyPoints(skeletonGrid, occGrid);
+        KEY_POINTS_TIMER.stop(timerStart);
     }
     
     public LinkedList<Point> getSkeletonPoints() {
@@ -124,6 +153,12 @@ public class TopologicalMap {
         return topologicalNodes;
     }
     
+    // Node graph as adjacency arrays, null until generateKeyAreas has run
+    public TopologicalGraph getGraph()
+    {
+        return topologicalGraph;
+    }
+    
     public void generateBorderPoints() {
         borderPoints = Skeleton.findKeyAreaBorders(areaGrid);
     }
@@ -144,6 +179,7 @@ public class TopologicalMap {
         // each node has one keypoint which is rougly in the center of the node region
         // this keypoint is used to pre-calculate occupancy grid paths between nodes.
         topologicalNodes = new HashMap<Integer, TopologicalNode>();
+        topologicalGraph = null;
         
         int index = 0;
         for (Point p: keyPoints)
@@ -154,16 +190,17 @@ public class TopologicalMap {
         topologicalNodes.put(Constants.UNEXPLORED_NODE_ID, new TopologicalNode(Constants.UNEXPLORED_NODE_ID, new Point(-1, -1)));
         
         // calculate the areas for each node
-        long realtimeStart = System.currentTimeMillis();
+        long timerStart = KEY_AREAS_TIMER.start();
         areaGrid = Skeleton.fillKeyAreas(occGrid, keyPoints, topologicalNodes);        
-        System.out.println("FillKeyAreas took " + (System.currentTimeMillis()-realtimeStart) + "ms.");
+        KEY_AREAS_TIMER.stop(timerStart);
         //find node neighbours
-        realtimeStart = System.currentTimeMillis();
+        timerStart = BORDER_POINTS_TIMER.start();
         //System.out.println("Generating node neighbour relationships...");
         generateBorderPoints();
-        System.out.println("GenerateBorderPoints took " + (System.currentTimeMillis()-realtimeStart) + "ms.");
+        BORDER_POINTS_TIMER.stop(timerStart);
         
-        long timeSpentOnPaths = 0;
+        // find node neighbours first; grid paths between explored neighbours are calculated afterwards
+        final ArrayList<TopologicalNode[]> nodePairs = new ArrayList<TopologicalNode[]>();
         for (Point p: getBorderPoints())
         {
             if (areaGrid[p.x][p.y] > 0)
@@ -181,37 +218,11 @@ public class TopologicalMap {
                             {
                                 if ((curCell != Constants.UNEXPLORED_NODE_ID)
                                         && (areaGrid[p.x+i][p.y+j] != Constants.UNEXPLORED_NODE_ID))
-                                {                                    
-                                    realtimeStart = System.currentTimeMillis();
-                                    Path pathToNode;
-                                    //check path cache
-                                    Rectangle pathCoords = new Rectangle(node.getPosition().x, node.getPosition().y, 
-                                            neighbourNode.getPosition().x, neighbourNode.getPosition().y);
-                                    if (pathCache.containsKey(pathCoords)) {                                        
-                                        pathToNode = pathCache.get(pathCoords);
-                                        System.out.println("Retrieved from cache path from " + node.getPosition() + " to " + neighbourNode.getPosition() + ". Path start = " + pathToNode.getStartPoint() + ", path goal = " + pathToNode.getGoalPoint());
-                                    } else {
-                                        pathToNode = new Path();
-                                        pathToNode.setStartPoint((Point)node.getPosition().clone());
-                                        pathToNode.setGoalPoint((Point)neighbourNode.getPosition().clone());
-
-                                        System.out.println("Generating path from " + node.getPosition() + " to " + neighbourNode.getPosition());
-                                        //pathToNode.getAStarPath(occGrid, node.getPosition(), neighbourNode.getPosition(), false);
-                                        pathToNode.getJumpPath(occGrid, (Point)node.getPosition().clone(), (Point)neighbourNode.getPosition().clone(), false);
-                                        if (!pathToNode.getStartPoint().equals(node.getPosition()) ||
-                                                !pathToNode.getGoalPoint().equals(neighbourNode.getPosition())) {
-                                            System.out.println("CATASTROPHIC ERROR!! Path from " + node.getPosition() + " to " + neighbourNode.getPosition() + ". Path start = " + pathToNode.getStartPoint() + ", path goal = " + pathToNode.getGoalPoint());
-                                        }
-                                        pathCache.put(pathCoords, pathToNode);
-                                        Path reversePath = pathToNode.generateReversePath();
-                                        Rectangle reversePathCoords = new Rectangle(neighbourNode.getPosition().x, neighbourNode.getPosition().y, 
-                                            node.getPosition().x, node.getPosition().y);
-                                        pathCache.put(reversePathCoords, reversePath);
-                                    }
-                                    //pathToNode.getJumpPath(occGrid, node.getPosition(), neighbourNode.getPosition(), false);
-                                    timeSpentOnPaths += (System.currentTimeMillis()-realtimeStart);
-                                    node.addNeighbour(neighbourNode, pathToNode);                                
-                                    neighbourNode.addNeighbour(node, pathToNode.generateReversePath());
+                                {
+                                    // path is set below, adding the neighbour now keeps the neighbour order
+                                    node.addNeighbour(neighbourNode, null);
+                                    neighbourNode.addNeighbour(node, null);
+                                    nodePairs.add(new TopologicalNode[] {node, neighbourNode});
                                 } else
                                 {
                                     
@@ -232,8 +243,95 @@ public class TopologicalMap {
                 }
             }
         }
-        System.out.println("Time spent calculating paths between regions: " + timeSpentOnPaths + "ms.");
         
+        // the searches between node pairs are independent, so run them on the worker pool
+        timerStart = NODE_PATHS_TIMER.start();
+        final Path[] pairPaths = new Path[nodePairs.size()];
+        WorkerPool.parallelFor(nodePairs.size(), new WorkerPool.RangeTask() {
+            public void run(int from, int to) {
+                for (int k = from; k < to; k++)
+                    pairPaths[k] = getPathBetweenNodes(nodePairs.get(k)[0], nodePairs.get(k)[1]);
+            }
+        });
+        for (int k = 0; k < nodePairs.size(); k++)
+        {
+            nodePairs.get(k)[0].setPathToNeighbour(nodePairs.get(k)[1], pairPaths[k]);
+            nodePairs.get(k)[1].setPathToNeighbour(nodePairs.get(k)[0], pairPaths[k].generateReversePath());
+        }
+        NODE_PATHS_TIMER.stop(timerStart);
+        
+        markIsolatedNodesUnexplored();
+        topologicalGraph = new TopologicalGraph(topologicalNodes);
+    }
+    
+    // Nodes without neighbours (not sure why these happen) are made part of unexplored space, as a
+    // workaround for planning from or to them. Done while building, as maps can be shared afterwards.
+    private void markIsolatedNodesUnexplored()
+    {
+        // node IDs other than the unexplored one run from 1 to keyPoints.size()
+        boolean[] isolated = new boolean[keyPoints.size() + 1];
+        boolean any = false;
+        for (TopologicalNode node : topologicalNodes.values())
+            if ((node.getID() != Constants.UNEXPLORED_NODE_ID) && (node.getListOfNeighbours().size() == 0)) {
+                isolated[node.getID()] = true;
+                any = true;
+            }
+        if (!any)
+            return;
+        for (int i = 0; i < areaGrid.length; i++)
+            for (int j = 0; j < areaGrid[0].length; j++)
+                if ((areaGrid[i][j] > 0) && (areaGrid[i][j] < isolated.length) && isolated[areaGrid[i][j]])
+                    areaGrid[i][j] = Constants.UNEXPLORED_NODE_ID;
+        for (int id = 1; id < isolated.length; id++)
+            if (isolated[id])
+                topologicalNodes.get(id).setID(Constants.UNEXPLORED_NODE_ID);
+    }
+    
+    // Grid path between the key points of two nodes, reused from the path cache if it is still free of obstacles
+    private Path getPathBetweenNodes(TopologicalNode node, TopologicalNode neighbourNode)
+    {
+        Rectangle pathCoords = new Rectangle(node.getPosition().x, node.getPosition().y, 
+                neighbourNode.getPosition().x, neighbourNode.getPosition().y);
+        Path pathToNode = usePathCache ? pathCache.get(pathCoords) : null;
+        if ((pathToNode != null) && pathToNode.found && isPathFree(pathToNode)) {
+            System.out.println("Retrieved from cache path from " + node.getPosition() + " to " + neighbourNode.getPosition() + ". Path start = " + pathToNode.getStartPoint() + ", path goal = " + pathToNode.getGoalPoint());
+            return pathToNode;
+        }
+        pathToNode = new Path();
+        pathToNode.setStartPoint((Point)node.getPosition().clone());
+        pathToNode.setGoalPoint((Point)neighbourNode.getPosition().clone());
+
+        System.out.println("Generating path from " + node.getPosition() + " to " + neighbourNode.getPosition());
+        //pathToNode.getAStarPath(occGrid, node.getPosition(), neighbourNode.getPosition(), false);
+        pathToNode.getJumpPath(occGrid, (Point)node.getPosition().clone(), (Point)neighbourNode.getPosition().clone(), false);
+        if (!pathToNode.getStartPoint().equals(node.getPosition()) ||
+                !pathToNode.getGoalPoint().equals(neighbourNode.getPosition())) {
+            System.out.println("CATASTROPHIC ERROR!! Path from " + node.getPosition() + " to " + neighbourNode.getPosition() + ". Path start = " + pathToNode.getStartPoint() + ", path goal = " + pathToNode.getGoalPoint());
+        }
+        if (usePathCache) {
+            pathCache.put(pathCoords, pathToNode);
+            Path reversePath = pathToNode.generateReversePath();
+            Rectangle reversePathCoords = new Rectangle(neighbourNode.getPosition().x, neighbourNode.getPosition().y, 
+                node.getPosition().x, node.getPosition().y);
+            pathCache.put(reversePathCoords, reversePath);
+        }
+        return pathToNode;
+    }
+    
+    // Empties the path cache between nodes at the start of a run, and turns it off for the run if useCache is false
+    public static void resetPathCache(boolean useCache)
+    {
+        pathCache.clear();
+        usePathCache = useCache;
+    }
+    
+    // True if no cell on the path has become an obstacle
+    private boolean isPathFree(Path cachedPath)
+    {
+        for (Point p : cachedPath.getPoints())
+            if (!occGrid.locationExists(p.x, p.y) || occGrid.obstacleAt(p.x, p.y))
+                return false;
+        return true;
     }
     
     public int[][] getAreaGrid()
@@ -0,0 +1,173 @@
+/*
+ *     Copyright 2010, 2015 Julian de Hoog (julian@dehoog.ca), Victor Spirin (victor.spirin@cs.ox.ac.uk)
+ *
+ *     This file is part of MRESim 2.2, a simulator for testing the behaviour
+ *     of multiple robots exploring unknown environments.
+ *
+ *     If you use MRESim, I would appreciate an acknowledgement and/or a citation
+ *     of our papers:
+ *
+ *     @inproceedings{deHoog2009,
+ *         title = "Role-Based Autonomous Multi-Robot Exploration",
+ *         author = "Julian de Hoog, Stephen Cameron and Arnoud Visser",
+ *         year = "2009",
+ *         booktitle = "International Conference on Advanced Cognitive Technologies and Applications (COGNITIVE)",
+ *         location = "Athens, Greece",
+ *         month = "November",
+ *     }
+ *
+ *     @incollection{spirin2015mresim,
+ *       title={MRESim, a Multi-robot Exploration Simulator for the Rescue Simulation League},
+ *       author={Spirin, Victor and de Hoog, Julian and Visser, Arnoud and Cameron, Stephen},
+ *       booktitle={RoboCup 2014: Robot World Cup XVIII},
+ *       pages={106--117},
+ *       year={2015},
+ *       publisher={Springer}
+ *     }
+ *
+ *     MRESim is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     MRESim is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along with MRESim.
+ *     If not, see <http://www.gnu.org/licenses/>.
+ */
+package environment;
+
+import exploration.Profiler;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Topological maps shared by agents whose occupancy grids have the same free space and obstacles,
+ * e.g. after a full merge through the base station. Maps are found by a hash of the grid content
+ * (and checked cell by cell), built once by the first agent asking for them, and kept while any
+ * agent still uses them. Shared maps must not be rebuilt; agents use them through their own
+ * TopologicalMap (see TopologicalMap.shareBuild).
+ * @author Victor
+ */
+public class TopologicalMapStore {
+    
+    private static final HashMap<Long, LinkedList<Entry>> entries = new HashMap<Long, LinkedList<Entry>>();
+    private static final IdentityHashMap<TopologicalMap, Entry> entriesByMap = new IdentityHashMap<TopologicalMap, Entry>();
+    private static final Profiler.Counter HITS = Profiler.counter("topologicalMapStoreHits");
+    private static final Profiler.Counter MISSES = Profiler.counter("topologicalMapStoreMisses");
+    
+    private static class Entry {
+        final long hash;
+        final OccupancyGrid grid;
+        final FutureTask<TopologicalMap> build;
+        int refCount;
+        
+        Entry(long hash, final OccupancyGrid grid) {
+            this.hash = hash;
+            this.grid = grid;
+            build = new FutureTask<TopologicalMap>(new Callable<TopologicalMap>() {
+                public TopologicalMap call() {
+                    TopologicalMap map = new TopologicalMap(grid);
+                    map.generateSkeleton();
+                    map.findKeyPoints();
+                    map.generateKeyAreas();
+                    return map;
+                }
+            });
+        }
+    }
+    
+    /**
+     * Returns the complete topological map of the grid content, building it if no agent holds one.
+     * If another agent is building the same map, waits for it. Every call must be matched by a
+     * release once the map is no longer used.
+     * @param snapshot copy of an occupancy grid, kept by the store and not to be changed afterwards
+     */
+    public static TopologicalMap acquire(OccupancyGrid snapshot) {
+        long hash = snapshot.getFreeAndObstacleHash();
+        Entry entry = null;
+        boolean mustBuild = false;
+        synchronized (TopologicalMapStore.class) {
+            LinkedList<Entry> bucket = entries.get(hash);
+            if (bucket == null) {
+                bucket = new LinkedList<Entry>();
+                entries.put(hash, bucket);
+            }
+            for (Entry e : bucket)
+                if (e.grid.hasSameFreeAndObstacleCells(snapshot)) {
+                    entry = e;
+                    break;
+                }
+            if (entry == null) {
+                entry = new Entry(hash, snapshot);
+                bucket.add(entry);
+                MISSES.increment();
+                mustBuild = true;
+            } else
+                HITS.increment();
+            entry.refCount++;
+        }
+        
+        if (mustBuild)
+            entry.build.run();
+        TopologicalMap map;
+        boolean interrupted = false;
+        while (true) {
+            try {
+                map = entry.build.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException e) {
+                synchronized (TopologicalMapStore.class) {
+                    remove(entry);
+                }
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        synchronized (TopologicalMapStore.class) {
+            entriesByMap.put(map, entry);
+        }
+        return map;
+    }
+    
+    // Gives back a map from acquire; it is dropped when no agent uses it any more
+    public static synchronized void release(TopologicalMap map) {
+        Entry entry = entriesByMap.get(map);
+        if (entry == null)
+            return;
+        entry.refCount--;
+        if (entry.refCount <= 0)
+            remove(entry);
+    }
+    
+    private static void remove(Entry entry) {
+        LinkedList<Entry> bucket = entries.get(entry.hash);
+        if (bucket != null) {
+            Iterator<Entry> i = bucket.iterator();
+            while (i.hasNext())
+                if (i.next() == entry)
+                    i.remove();
+            if (bucket.isEmpty())
+                entries.remove(entry.hash);
+        }
+        Iterator<Entry> i = entriesByMap.values().iterator();
+        while (i.hasNext())
+            if (i.next() == entry)
+                i.remove();
+    }
+    
+    public static synchronized int getNumMaps() {
+        return entriesByMap.size();
+    }
+}
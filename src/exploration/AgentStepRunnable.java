@@ -59,6 +59,11 @@ public class AgentStepRunnable implements Runnable{
     private Environment env;
     private SimulationFramework simFramework;
     
+    // one sample per agent per cycle; planning and sensing once per step taken
+    private static final Profiler.Timer AGENT_STEP_TIMER = Profiler.timer("agent.step");
+    private static final Profiler.Timer PLANNING_TIMER = Profiler.timer("agent.planning");
+    private static final Profiler.Timer SENSING_TIMER = Profiler.timer("agent.sensing");
+    
     AgentStepRunnable(RealAgent agent, SimulatorConfig simConfig, int timeElapsed, 
             Environment env, SimulationFramework simFramework) 
     {
@@ -76,20 +81,24 @@ public class AgentStepRunnable implements Runnable{
         double[] sensorData = null;
         double distance_left = agent.getSpeed();
         //profiling
-        long realtimeStartAgentCycle = System.currentTimeMillis();
+        long stepStart = AGENT_STEP_TIMER.start();
         
         //<editor-fold defaultstate="collapsed" desc="Continue along the path, until we have exhausted agent 'speed' per cycle or run out of path">
         if (simConfig.getExpAlgorithm() == RunFromLog) {
             nextStep = agent.takeStep(timeElapsed);
             agent.flush();
+            long sensingStart = SENSING_TIMER.start();
             sensorData = simFramework.findSensorData(agent, nextStep);
             agent.writeStep(nextStep, sensorData, true);
+            SENSING_TIMER.stop(sensingStart);
             distance_left = 0;
         }
         while (distance_left > 0)
         {
             //<editor-fold defaultstate="collapsed" desc="Get next step">
+            long planningStart = PLANNING_TIMER.start();
             nextStep = agent.takeStep(timeElapsed);
+            PLANNING_TIMER.stop(planningStart);
             if(nextStep == null) {
                 nextStep = agent.getLocation();
                 System.out.println(agent + " !!! setting envError because nextStep is null, distance_left is " + distance_left);
@@ -98,7 +107,6 @@ public class AgentStepRunnable implements Runnable{
             }
             agent.flush();
             //</editor-fold>
-            System.out.println(agent.toString() + "Get next step took " + (System.currentTimeMillis()-realtimeStartAgentCycle) + "ms.");
                         
             //<editor-fold defaultstate="collapsed" desc="Check to make sure step is legal">
             if(env.legalMove(agent.getX(), agent.getY(), nextStep.x, nextStep.y)) {
@@ -108,9 +116,6 @@ public class AgentStepRunnable implements Runnable{
                 //<editor-fold defaultstate="collapsed" desc="If we don't have enough 'speed' left to reach nextPoint, go as far as we can and keep nextPoint in the path">
                 if (dist > distance_left) {
                     //System.out.println(agent.toString() + " exceeded speed. Distance left: " + distance_left + ", dist to next path point: " + dist);
-                    //Add nextStep back to path, as we will not reach it yet
-                    if ((agent.getPath() != null) && (agent.getPath().getPoints() != null))
-                        agent.getPath().getPoints().add(0, nextStep);
                     double ratio = distance_left / dist;
                     nextStep.x = agent.getX() + (int)Math.round((nextStep.x - agent.getX()) * ratio);
                     nextStep.y = agent.getY() + (int)Math.round((nextStep.y - agent.getY()) * ratio);
@@ -120,6 +125,11 @@ public class AgentStepRunnable implements Runnable{
                         nextStep.y = agent.getY();
                         System.out.println(agent.toString() + " directLinePossible returned wrong result!");
                     }
+                    //Add nextStep back to path, as we will not reach it yet. Path points are stored by value, so
+                    //this is done after shortening the step: the path used to hold nextStep itself and so
+                    //started at the shortened step, and runs depend on that
+                    if ((agent.getPath() != null) && (agent.getPath().getPoints() != null))
+                        agent.getPath().getPoints().add(0, nextStep);
                     //System.out.println(agent.toString() + " speed corrected. Now is: " + agent.getLocation().distance(nextStep));
                     distance_left = 0;
                 //</editor-fold>
@@ -130,9 +140,11 @@ public class AgentStepRunnable implements Runnable{
                 // comment below out to process sensor data once at the end of each time step, to speed the simulation up
                 // if agents cover too much distance in each timestep, we may need to process it more frequently
                 //System.out.println(agent.toString() + "2 took " + (System.currentTimeMillis()-realtimeStartAgentCycle) + "ms.");
+                long sensingStart = SENSING_TIMER.start();
                 sensorData = simFramework.findSensorData(agent, nextStep);
                 //System.out.println(agent.toString() + "3 took " + (System.currentTimeMillis()-realtimeStartAgentCycle) + "ms.");
                 agent.writeStep(nextStep, sensorData, true);
+                SENSING_TIMER.stop(sensingStart);
                 //System.out.println(agent.toString() + "4 took " + (System.currentTimeMillis()-realtimeStartAgentCycle) + "ms.");
             }
             else
@@ -184,7 +196,7 @@ public class AgentStepRunnable implements Runnable{
             agent.updateTrueAreaKnown(env);*/
         //benchmark
         agent.getStats().incrementTimeLastCentralCommand();
-        System.out.println(agent.toString() + "Agent cycle complete, took " + (System.currentTimeMillis()-realtimeStartAgentCycle) + "ms.");
+        AGENT_STEP_TIMER.stop(stepStart);
     }
 
 }
@@ -0,0 +1,106 @@
+/*
+ *     Copyright 2010, 2015 Julian de Hoog (julian@dehoog.ca), Victor Spirin (victor.spirin@cs.ox.ac.uk)
+ *
+ *     This file is part of MRESim 2.2, a simulator for testing the behaviour
+ *     of multiple robots exploring unknown environments.
+ *
+ *     If you use MRESim, I would appreciate an acknowledgement and/or a citation
+ *     of our papers:
+ *
+ *     @inproceedings{deHoog2009,
+ *         title = "Role-Based Autonomous Multi-Robot Exploration",
+ *         author = "Julian de Hoog, Stephen Cameron and Arnoud Visser",
+ *         year = "2009",
+ *         booktitle = "International Conference on Advanced Cognitive Technologies and Applications (COGNITIVE)",
+ *         location = "Athens, Greece",
+ *         month = "November",
+ *     }
+ *
+ *     @incollection{spirin2015mresim,
+ *       title={MRESim, a Multi-robot Exploration Simulator for the Rescue Simulation League},
+ *       author={Spirin, Victor and de Hoog, Julian and Visser, Arnoud and Cameron, Stephen},
+ *       booktitle={RoboCup 2014: Robot World Cup XVIII},
+ *       pages={106--117},
+ *       year={2015},
+ *       publisher={Springer}
+ *     }
+ *
+ *     MRESim is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     MRESim is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along with MRESim.
+ *     If not, see <http://www.gnu.org/licenses/>.
+ */
+package exploration;
+
+import config.Constants;
+import exploration.FrontierExploration.Utility;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns robots to frontiers given utility estimates for each (robot, frontier) pair.
+ * The implementation is selected with Constants.FRONTIER_ASSIGNER.
+ * @author Victor
+ */
+public abstract class FrontierAssigner {
+    
+    // Replaces the estimate in a Utility with the exact utility, leaving ute.path null if the
+    // frontier cannot be reached
+    public interface Evaluator {
+        public void evaluate(Utility ute);
+    }
+    
+    // Assignments computed in the current time step, keyed by the group they were computed for
+    private static int sharedTime = -1;
+    private static final HashMap<String, Map<Integer, Utility>> shared = new HashMap<String, Map<Integer, Utility>>();
+    
+    /**
+     * Returns the outcome of the assignment as a list of utilities in the order they were decided.
+     * A utility with a path assigns robot ute.ID to ute.frontier (at most once per robot and per
+     * frontier). A utility without a path found its frontier unreachable, and that frontier was
+     * dropped. If stopID is not -1 the assigner may stop as soon as robot stopID is assigned.
+     */
+    public abstract List<Utility> assign(List<Utility> utilities, Evaluator evaluator, int stopID);
+    
+    public static FrontierAssigner getAssigner() {
+        switch (Constants.FRONTIER_ASSIGNER) {
+            case Constants.FRONTIER_ASSIGNER_HUNGARIAN:
+                return new HungarianFrontierAssigner();
+            default:
+                return new GreedyFrontierAssigner();
+        }
+    }
+    
+    // Returns the assignments shared under key in time step time, keyed by robot ID, or null
+    public static Map<Integer, Utility> getShared(int time, String key) {
+        synchronized(shared) {
+            if (time != sharedTime)
+                return null;
+            return shared.get(key);
+        }
+    }
+    
+    // Shares the complete outcome of an assignment with the other agents of the group
+    public static void share(int time, String key, List<Utility> outcome) {
+        HashMap<Integer, Utility> byID = new HashMap<Integer, Utility>();
+        for (Utility u : outcome)
+            if (u.path != null)
+                byID.put(u.ID, u);
+        synchronized(shared) {
+            if (time != sharedTime) {
+                shared.clear();
+                sharedTime = time;
+            }
+            shared.put(key, byID);
+        }
+    }
+}
@@ -288,7 +288,7 @@ public class FrontierExploration {
         return ((frontier.getArea() * 100000000) / Math.pow(agentLoc.distance(frontier.getCentre()), 4) );
     }
     
-    private static void calculateUtilityExact(RealAgent agent, Utility ute) {
+    private static void calculateUtilityExact(RealAgent agent, Utility ute, FrontierPathSearch pathSearch) {
         Point start;
         boolean isMe = (ute.ID == agent.getID());
         if(isMe)
@@ -306,7 +306,7 @@ public class FrontierExploration {
             p.found = false;
         } else*/
         {
-            p = agent.calculatePath(start, ute.frontier.getCentre()/*ute.frontier.getClosestPoint(start, agent.getOccupancyGrid())*/);
+            p = pathSearch.calculatePath(start, ute.frontier.getCentre()/*ute.frontier.getClosestPoint(start, agent.getOccupancyGrid())*/);
         }
 
         if(p.found) {
@@ -435,7 +435,7 @@ public class FrontierExploration {
         return utilities;
     }
     
-    private static class Utility implements Comparable<Utility>  {
+    static class Utility implements Comparable<Utility>  {
 
         public int ID;
         public Point agentLocation;
@@ -471,6 +471,47 @@ public class FrontierExploration {
         return utilities.peek().utility;
     }
     
+    // Identifies the communicating group an assignment is computed for: the agents in range of each other
+    // and the map they share after merging, so that members planning in the same time step use one
+    // assignment. Null if no teammate is in range.
+    private static String assignmentGroupKey(RealAgent agent) {
+        TreeSet<Integer> group = new TreeSet<Integer>();
+        group.add(agent.getID());
+        for (TeammateAgent teammate : agent.getAllTeammates().values())
+            if (teammate.isInRange())
+                group.add(teammate.getID());
+        if (group.size() == 1)
+            return null;
+        return group + ";" + agent.getOccupancyGrid().getFreeAndObstacleHash();
+    }
+    
+    // Our frontier was chosen by a teammate, but the path and utility are our own. The frontier may not be
+    // among our frontiers of interest, which depend on where we are, but our map has the same frontiers.
+    // Returns null if we cannot use it.
+    private static java.util.List<Utility> useSharedAssignment(RealAgent agent, Utility assigned, 
+            PriorityQueue<Utility> utilities, FrontierAssigner.Evaluator evaluator) {
+        Point sharedCentre = assigned.frontier.getCentre();
+        Utility ours = null;
+        for (Utility u : utilities)
+            if ((u.ID == agent.getID()) && u.frontier.getCentre().equals(sharedCentre)) {
+                ours = u;
+                break;
+            }
+        if (ours == null)
+            for (Frontier f : agent.getFrontiers())
+                if (f.getCentre().equals(sharedCentre) && !agent.isBadFrontier(f)) {
+                    ours = new Utility(agent.getID(), agent.getLocation(), f, utilityEstimate(agent.getLocation(), f), null);
+                    break;
+                }
+        if (ours == null)
+            return null;
+        evaluator.evaluate(ours);
+        if (ours.path == null)
+            return null;
+        System.out.println(agent + " using shared frontier assignment " + ours);
+        return Collections.singletonList(ours);
+    }
+    
     public static LinkedList<Integer> chooseFrontier(RealAgent agent, boolean considerOtherAgents,
             LinkedList<Integer> teammatesAssignedIDs) {
         if (teammatesAssignedIDs == null)
@@ -481,121 +522,80 @@ public class FrontierExploration {
         // Step 2:  Create priorityQueue of utility estimates (Euclidean distance)
         PriorityQueue<Utility> utilities = initializeUtilities(agent, frontiers, considerOtherAgents, teammatesAssignedIDs);
         System.out.println(agent + " frontier utilities: " + utilities.size());
-        // Step 3
-        Utility best = null;
-        LinkedList<Utility> removal;
-        boolean isLastFrontier = false;
-        int counter = 0;
+        // Paths to all frontiers of interest are found with one search per agent location
+        LinkedList<Point> frontierCentres = new LinkedList<Point>();
+        for (Frontier f : frontiers)
+            frontierCentres.add(f.getCentre());
+        FrontierPathSearch pathSearch = new FrontierPathSearch(agent, frontierCentres);
+        // Run the searches for the agents among the best candidates in parallel before the greedy loop below
+        ArrayList<Utility> bestCandidates = new ArrayList<Utility>(utilities);
+        Collections.sort(bestCandidates);
+        LinkedList<Point> candidateStarts = new LinkedList<Point>();
+        for (int i = 0; i < Math.min(bestCandidates.size(), Constants.MAX_NUM_FRONTIERS); i++)
+            candidateStarts.add(bestCandidates.get(i).agentLocation);
+        pathSearch.prepare(candidateStarts, Constants.MAX_HELPER_THREADS_PER_AGENT);
+        // Step 3:  Assign robots to frontiers, or use the assignment a teammate already made for this group
+        final RealAgent evaluatingAgent = agent;
+        final FrontierPathSearch evaluatingSearch = pathSearch;
+        FrontierAssigner.Evaluator evaluator = new FrontierAssigner.Evaluator() {
+            public void evaluate(Utility ute) {
+                calculateUtilityExact(evaluatingAgent, ute, evaluatingSearch);
+            }
+        };
+        java.util.List<Utility> outcome = null;
+        String groupKey = null;
+        // the first agent of a group to plan fixes the shared result, which depends on thread timing,
+        // so a run that must be repeatable does not share
+        boolean share = Constants.SHARE_FRONTIER_ASSIGNMENT 
+                && ((agent.getSimConfig() == null) || !agent.getSimConfig().getUseFixedSeed());
+        if (share)
+            groupKey = assignmentGroupKey(agent);
+        if (groupKey != null) {
+            Map<Integer, Utility> shared = FrontierAssigner.getShared(agent.getTimeElapsed(), groupKey);
+            if (shared != null) {
+                // a teammate already assigned the group; if it left us out we only plan for ourselves
+                if (shared.containsKey(agent.getID()))
+                    outcome = useSharedAssignment(agent, shared.get(agent.getID()), utilities, evaluator);
+                groupKey = null;
+            }
+        }
+        if (outcome == null) {
+            FrontierAssigner assigner = FrontierAssigner.getAssigner();
+            // A shared assignment has to cover the whole group, so it cannot stop at our own
+            outcome = assigner.assign(new ArrayList<Utility>(utilities), evaluator, 
+                    (groupKey == null) ? agent.getID() : -1);
+            if (groupKey != null)
+                FrontierAssigner.share(agent.getTimeElapsed(), groupKey, outcome);
+        }
         
-        while(!utilities.isEmpty()) {    // && counter < 5) {
-            best = utilities.poll();
+        for (Utility best : outcome) {
             System.out.println(agent + best.toString());
-            // Check if this is the only remaining frontier
-            isLastFrontier = true;
-            if(!utilities.isEmpty())
-                for(Utility u: utilities)
-                    if(u.frontier != best.frontier){
-                        isLastFrontier = false;
-                        break;
-                    }
-
-            /*// If this is the only remaining frontier
-            if(isLastFrontier) {
-                //if(best.ID == agent.getID()) {
-                    // just in case path hasn't been computed yet
-                    if(best.path == null) {
-                        // find closest point on frontier farthest away from teammates
-                        double closestDist = 1000000;
-                        Point closestPoint = best.frontier.getCentre();
-                        double closestTeammateDist = 1000000;
-                        for(int i=0; i<best.frontier.getPolygonOutline().size(); i++) {
-                            if(!agent.getOccupancyGrid().obstacleWithinDistance(best.frontier.getPolygonOutline().get(i).x, best.frontier.getPolygonOutline().get(i).y, Constants.WALL_DISTANCE)) {
-                                if(best.frontier.getPolygonOutline().get(i).distance(agent.getLocation()) < closestDist) {
-                                    closestPoint = best.frontier.getPolygonOutline().get(i);
-                                    closestDist = best.frontier.getPolygonOutline().get(i).distance(agent.getLocation());
-                                    closestTeammateDist = 0;
-                                     for(TeammateAgent teammate: agent.getAllTeammates().values())
-                                        if(teammate.isInDirectRange())
-                                            closestTeammateDist += teammate.getLocation().distance(best.frontier.getPolygonOutline().get(i));
-
-                                }
-                                else if(best.frontier.getPolygonOutline().get(i).distance(agent.getLocation()) == closestDist) {
-                                    double newTeammateDist = 0;
-                                     for(TeammateAgent teammate: agent.getAllTeammates().values())
-                                        if(teammate.isInDirectRange())
-                                            newTeammateDist += teammate.getLocation().distance(best.frontier.getPolygonOutline().get(i));
-                                    if(newTeammateDist > closestTeammateDist) {
-                                        closestPoint = best.frontier.getPolygonOutline().get(i);
-                                        closestDist = best.frontier.getPolygonOutline().get(i).distance(agent.getLocation());
-                                        closestTeammateDist = newTeammateDist;
-                                    }
-
-                                }
-                            }
-                        }
-                        
-                        best.path = agent.calculatePath(agent.getLocation(), best.frontier.getCentre());
-                    }
-
-                    agent.setLastFrontier(best.frontier);
-                    agent.setCurrentGoal(best.frontier.getCentre());
-                    agent.addDirtyCells(agent.getPath().getAllPathPixels());
-                    agent.setPath(best.path);
-                    return true;
-            }*/
-
-            // If this is an estimate, calculate true utility
-            if(best.path == null)
-                calculateUtilityExact(agent, best);
-            
             if(best.path == null) {
                 System.out.println(agent + " could not calculate exact utility: " + best + ", removing frontier: " +
                         best.frontier);
-                // it's not possible to plan a path to this frontier, so eliminate it entirely
-                removal = new LinkedList<Utility>();
-                for(Utility u : utilities)
-                    if(u.frontier == best.frontier)
-                        removal.add(u);
-                for(Utility r : removal) {                
-                    utilities.remove(r);                    
-                }
                 if (best.ID == agent.getID()) {
                     System.out.println(agent + " adding bad frontier");
                     agent.addBadFrontier(best.frontier); //only add bad frontiers if they are 'ours'
                 }
-                    
-            } else {
-                //System.out.println("UtilityExact: " + best.utility);
-                if((utilities.size() == 0) || (best.utility >= utilities.peek().utility)){
-                    if(best.ID == agent.getID()){
-                        if ((agent.getRole() == RobotConfig.roletype.Relay) && (best.utility < 0)) {//cannot reach frontier in time
-                            agent.setState(BasicAgent.ExploreState.GoToChild);
-                            return null;
-                        }
-                        agent.setLastFrontier(best.frontier);
-                        agent.setCurrentGoal(best.frontier.getCentre());
-                        if(agent.getPath() != null)
-                            agent.addDirtyCells(agent.getPath().getAllPathPixels());
-                        agent.setPath(best.path);
-                        return null;
-                    }
-                    else {
-                        // This robot assigned, so remove all remaining associated utilities
-                        System.out.println(agent + "This robot assigned, so remove all remaining associated utilities");
-                        removal = new LinkedList<Utility>();
-                        for(Utility u : utilities)
-                            if(u.ID == best.ID  ||
-                               u.frontier == best.frontier)
-                                removal.add(u);
-                        for(Utility r : removal)
-                            utilities.remove(r);
-                        teammatesAssignedIDs.add(best.ID);
-                    }
-                } else
-                    utilities.add(best);
-            }
-
-            counter++;
+            } else if(best.ID == agent.getID()){
+                if ((agent.getRole() == RobotConfig.roletype.Relay) && (best.utility < 0)) {//cannot reach frontier in time
+                    agent.setState(BasicAgent.ExploreState.GoToChild);
+                    return null;
+                }
+                Path path = pathSearch.pathToFollow(agent.getLocation(), best.frontier.getCentre(), best.path);
+                if (!path.found) {
+                    System.out.println(agent + " could not plan path to chosen frontier: " + best + ", adding bad frontier");
+                    agent.addBadFrontier(best.frontier);
+                    continue;
+                }
+                agent.setLastFrontier(best.frontier);
+                agent.setCurrentGoal(best.frontier.getCentre());
+                if(agent.getPath() != null)
+                    agent.addDirtyCells(agent.getPath().getAllPathPixels());
+                agent.setPath(path);
+                return null;
+            } else
+                teammatesAssignedIDs.add(best.ID);
         }
         
         return teammatesAssignedIDs;  // couldn't assign frontier - could be there are more robots than frontiers?
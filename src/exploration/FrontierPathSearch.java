@@ -0,0 +1,135 @@
+/*
+ *     Copyright 2010, 2015 Julian de Hoog (julian@dehoog.ca), Victor Spirin (victor.spirin@cs.ox.ac.uk)
+ *
+ *     This file is part of MRESim 2.2, a simulator for testing the behaviour
+ *     of multiple robots exploring unknown environments.
+ *
+ *     If you use MRESim, I would appreciate an acknowledgement and/or a citation
+ *     of our papers:
+ *
+ *     @inproceedings{deHoog2009,
+ *         title = "Role-Based Autonomous Multi-Robot Exploration",
+ *         author = "Julian de Hoog, Stephen Cameron and Arnoud Visser",
+ *         year = "2009",
+ *         booktitle = "International Conference on Advanced Cognitive Technologies and Applications (COGNITIVE)",
+ *         location = "Athens, Greece",
+ *         month = "November",
+ *     }
+ *
+ *     @incollection{spirin2015mresim,
+ *       title={MRESim, a Multi-robot Exploration Simulator for the Rescue Simulation League},
+ *       author={Spirin, Victor and de Hoog, Julian and Visser, Arnoud and Cameron, Stephen},
+ *       booktitle={RoboCup 2014: Robot World Cup XVIII},
+ *       pages={106--117},
+ *       year={2015},
+ *       publisher={Springer}
+ *     }
+ *
+ *     MRESim is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     MRESim is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along with MRESim.
+ *     If not, see <http://www.gnu.org/licenses/>.
+ */
+package exploration;
+
+import agents.RealAgent;
+import config.Constants;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import path.MultiTargetSearch;
+import path.Path;
+
+/**
+ * Paths from agents to a fixed set of frontier targets, for exact frontier utilities. The first path
+ * asked for from a start location runs one search that stops once all targets are settled; paths from
+ * the same start to the other targets are then lookups instead of one planner run per frontier.
+ * The search (path.MultiTargetSearch) finds the shortest grid path, through unknown space where needed
+ * since frontier centres usually lie in it, like grid A*. These paths only give utility costs: the
+ * agent follows a path planned with agent.calculatePath to the frontier it chooses (see pathToFollow).
+ */
+public class FrontierPathSearch {
+    private final RealAgent agent;
+    private final List<Point> targets;
+    // paths found from each start, keyed by target
+    private final HashMap<Point, HashMap<Point, LinkedList<Point>>> searches = 
+            new HashMap<Point, HashMap<Point, LinkedList<Point>>>();
+    // paths returned by calculatePath that came from the search rather than agent.calculatePath
+    private final Set<Path> searchPaths = Collections.newSetFromMap(new IdentityHashMap<Path, Boolean>());
+    
+    public FrontierPathSearch(RealAgent agent, List<Point> targets) {
+        this.agent = agent;
+        this.targets = targets;
+    }
+    
+    // Runs the searches from the given start locations in parallel on the WorkerPool, using at most
+    // maxHelpers pool threads besides the calling thread
+    public void prepare(List<Point> starts, int maxHelpers) {
+        if (!Constants.USE_FRONTIER_PATH_SEARCH)
+            return;
+        final ArrayList<Point> newStarts = new ArrayList<Point>();
+        for (Point start : starts)
+            if (!searches.containsKey(start) && !newStarts.contains(start))
+                newStarts.add(new Point(start));
+        final ArrayList<HashMap<Point, LinkedList<Point>>> results = new ArrayList<HashMap<Point, LinkedList<Point>>>();
+        for (int i = 0; i < newStarts.size(); i++)
+            results.add(null);
+        WorkerPool.parallelFor(newStarts.size(), new WorkerPool.RangeTask() {
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++)
+                    results.set(i, search(newStarts.get(i)));
+            }
+        }, maxHelpers);
+        for (int i = 0; i < newStarts.size(); i++)
+            searches.put(newStarts.get(i), results.get(i));
+    }
+    
+    private HashMap<Point, LinkedList<Point>> search(Point start) {
+        MultiTargetSearch search = agent.takeTargetSearch();
+        try {
+            return search.findPaths(agent.getOccupancyGrid(), start, targets, Constants.FRONTIER_PATH_SEARCH_MAX_DETOUR);
+        } finally {
+            agent.releaseTargetSearch(search);
+        }
+    }
+    
+    // Shortest grid path from start to target (see above); agent.calculatePath(start, target) is used
+    // if the search did not reach target
+    public Path calculatePath(Point start, Point target) {
+        if (Constants.USE_FRONTIER_PATH_SEARCH) {
+            HashMap<Point, LinkedList<Point>> paths = searches.get(start);
+            if (paths == null) {
+                paths = search(start);
+                searches.put(new Point(start), paths);
+            }
+            LinkedList<Point> cells = paths.get(target);
+            if (cells != null) {
+                Path path = MultiTargetSearch.toPath(cells);
+                searchPaths.add(path);
+                return path;
+            }
+        }
+        return agent.calculatePath(start, target);
+    }
+    
+    // The path to follow to target, given the path its utility was calculated with: a path found by
+    // the search is planned again with agent.calculatePath
+    public Path pathToFollow(Point start, Point target, Path utilityPath) {
+        if ((utilityPath != null) && !searchPaths.contains(utilityPath))
+            return utilityPath;
+        return agent.calculatePath(start, target);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ *     Copyright 2010, 2015 Julian de Hoog (julian@dehoog.ca), Victor Spirin (victor.spirin@cs.ox.ac.uk)
+ *
+ *     This file is part of MRESim 2.2, a simulator for testing the behaviour
+ *     of multiple robots exploring unknown environments.
+ *
+ *     If you use MRESim, I would appreciate an acknowledgement and/or a citation
+ *     of our papers:
+ *
+ *     @inproceedings{deHoog2009,
+ *         title = "Role-Based Autonomous Multi-Robot Exploration",
+ *         author = "Julian de Hoog, Stephen Cameron and Arnoud Visser",
+ *         year = "2009",
+ *         booktitle = "International Conference on Advanced Cognitive Technologies and Applications (COGNITIVE)",
+ *         location = "Athens, Greece",
+ *         month = "November",
+ *     }
+ *
+ *     @incollection{spirin2015mresim,
+ *       title={MRESim, a Multi-robot Exploration Simulator for the Rescue Simulation League},
+ *       author={Spirin, Victor and de Hoog, Julian and Visser, Arnoud and Cameron, Stephen},
+ *       booktitle={RoboCup 2014: Robot World Cup XVIII},
+ *       pages={106--117},
+ *       year={2015},
+ *       publisher={Springer}
+ *     }
+ *
+ *     MRESim is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     MRESim is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along with MRESim.
+ *     If not, see <http://www.gnu.org/licenses/>.
+ */
+package exploration;
+
+import environment.Frontier;
+import exploration.FrontierExploration.Utility;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Greedy assignment: the best utility is evaluated exactly and assigned if it is still the best,
+ * otherwise it goes back in the queue. Entries of assigned robots and dropped frontiers are
+ * skipped when they reach the head of the queue instead of being searched for and removed.
+ * @author Victor
+ */
+public class GreedyFrontierAssigner extends FrontierAssigner {
+    
+    private HashSet<Integer> assignedIDs;
+    private Set<Frontier> droppedFrontiers;
+    
+    public List<Utility> assign(List<Utility> utilities, Evaluator evaluator, int stopID) {
+        assignedIDs = new HashSet<Integer>();
+        droppedFrontiers = Collections.newSetFromMap(new IdentityHashMap<Frontier, Boolean>());
+        PriorityQueue<Utility> queue = new PriorityQueue<Utility>(Math.max(1, utilities.size()));
+        queue.addAll(utilities);
+        LinkedList<Utility> outcome = new LinkedList<Utility>();
+        
+        Utility best;
+        while ((best = head(queue)) != null) {
+            queue.poll();
+            // If this is an estimate, calculate true utility
+            if (best.path == null)
+                evaluator.evaluate(best);
+            
+            if (best.path == null) {
+                // it's not possible to plan a path to this frontier, so eliminate it entirely
+                droppedFrontiers.add(best.frontier);
+                outcome.add(best);
+            } else {
+                Utility next = head(queue);
+                if ((next == null) || (best.utility >= next.utility)) {
+                    assignedIDs.add(best.ID);
+                    droppedFrontiers.add(best.frontier);
+                    outcome.add(best);
+                    if (best.ID == stopID)
+                        break;
+                } else
+                    queue.add(best);
+            }
+        }
+        
+        return outcome;
+    }
+    
+    // Returns the best utility still in play, discarding stale entries on the way
+    private Utility head(PriorityQueue<Utility> queue) {
+        while (!queue.isEmpty() && 
+                (assignedIDs.contains(queue.peek().ID) || droppedFrontiers.contains(queue.peek().frontier)))
+            queue.poll();
+        return queue.peek();
+    }
+    
+    @Override
+    public String toString() {
+        return "[GreedyFrontierAssigner] ";
+    }
+}
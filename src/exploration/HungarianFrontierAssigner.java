@@ -0,0 +1,195 @@
+/*
+ *     Copyright 2010, 2015 Julian de Hoog (julian@dehoog.ca), Victor Spirin (victor.spirin@cs.ox.ac.uk)
+ *
+ *     This file is part of MRESim 2.2, a simulator for testing the behaviour
+ *     of multiple robots exploring unknown environments.
+ *
+ *     If you use MRESim, I would appreciate an acknowledgement and/or a citation
+ *     of our papers:
+ *
+ *     @inproceedings{deHoog2009,
+ *         title = "Role-Based Autonomous Multi-Robot Exploration",
+ *         author = "Julian de Hoog, Stephen Cameron and Arnoud Visser",
+ *         year = "2009",
+ *         booktitle = "International Conference on Advanced Cognitive Technologies and Applications (COGNITIVE)",
+ *         location = "Athens, Greece",
+ *         month = "November",
+ *     }
+ *
+ *     @incollection{spirin2015mresim,
+ *       title={MRESim, a Multi-robot Exploration Simulator for the Rescue Simulation League},
+ *       author={Spirin, Victor and de Hoog, Julian and Visser, Arnoud and Cameron, Stephen},
+ *       booktitle={RoboCup 2014: Robot World Cup XVIII},
+ *       pages={106--117},
+ *       year={2015},
+ *       publisher={Springer}
+ *     }
+ *
+ *     MRESim is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     MRESim is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along with MRESim.
+ *     If not, see <http://www.gnu.org/licenses/>.
+ */
+package exploration;
+
+import config.Constants;
+import environment.Frontier;
+import exploration.FrontierExploration.Utility;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Optimal assignment: the best utility estimates of each robot (at most
+ * Constants.HUNGARIAN_CANDIDATES_PER_ROBOT reachable frontiers) are evaluated exactly, and the
+ * assignment maximising the sum of utilities is found with the Hungarian algorithm, O(n^3) in the
+ * number of robots and frontiers. Pairs that were not evaluated cannot be assigned.
+ * @author Victor
+ */
+public class HungarianFrontierAssigner extends FrontierAssigner {
+    
+    public List<Utility> assign(List<Utility> utilities, Evaluator evaluator, int stopID) {
+        LinkedList<Utility> outcome = new LinkedList<Utility>();
+        Set<Frontier> droppedFrontiers = Collections.newSetFromMap(new IdentityHashMap<Frontier, Boolean>());
+        
+        // Exact utilities for the best estimates of each robot; a frontier someone cannot reach is dropped,
+        // as in the greedy assignment
+        ArrayList<Utility> sorted = new ArrayList<Utility>(utilities);
+        Collections.sort(sorted);
+        ArrayList<Utility> candidates = new ArrayList<Utility>();
+        HashMap<Integer, Integer> candidatesOf = new HashMap<Integer, Integer>();
+        for (Utility u : sorted) {
+            if (droppedFrontiers.contains(u.frontier))
+                continue;
+            Integer count = candidatesOf.get(u.ID);
+            if ((count != null) && (count >= Constants.HUNGARIAN_CANDIDATES_PER_ROBOT))
+                continue;
+            if (u.path == null)
+                evaluator.evaluate(u);
+            if (u.path == null) {
+                droppedFrontiers.add(u.frontier);
+                outcome.add(u);
+            } else {
+                candidates.add(u);
+                candidatesOf.put(u.ID, (count == null) ? 1 : count + 1);
+            }
+        }
+        
+        // Index robots and frontiers
+        HashMap<Integer, Integer> rowOf = new HashMap<Integer, Integer>();
+        IdentityHashMap<Frontier, Integer> colOf = new IdentityHashMap<Frontier, Integer>();
+        ArrayList<Utility> kept = new ArrayList<Utility>();
+        for (Utility u : candidates) {
+            if (droppedFrontiers.contains(u.frontier))
+                continue;
+            if (!rowOf.containsKey(u.ID))
+                rowOf.put(u.ID, rowOf.size());
+            if (!colOf.containsKey(u.frontier))
+                colOf.put(u.frontier, colOf.size());
+            kept.add(u);
+        }
+        if (kept.isEmpty())
+            return outcome;
+        
+        // Square cost matrix; padding rows and columns cost the same everywhere, so do not bias the result
+        int n = Math.max(rowOf.size(), colOf.size());
+        double maxUtility = Double.NEGATIVE_INFINITY;
+        for (Utility u : kept)
+            maxUtility = Math.max(maxUtility, u.utility);
+        Utility[][] pair = new Utility[n][n];
+        double[][] cost = new double[n][n];
+        for (Utility u : kept) {
+            int r = rowOf.get(u.ID), c = colOf.get(u.frontier);
+            pair[r][c] = u;
+            cost[r][c] = maxUtility - u.utility;
+        }
+        double missing = 0;
+        for (Utility u : kept)
+            missing = Math.max(missing, cost[rowOf.get(u.ID)][colOf.get(u.frontier)]);
+        missing = (missing + 1) * n;
+        for (int r = 0; r < rowOf.size(); r++)
+            for (int c = 0; c < colOf.size(); c++)
+                if (pair[r][c] == null)
+                    cost[r][c] = missing;
+        
+        int[] colToRow = solve(cost);
+        ArrayList<Utility> assigned = new ArrayList<Utility>();
+        for (int c = 0; c < n; c++)
+            if (colToRow[c] >= 0 && pair[colToRow[c]][c] != null)
+                assigned.add(pair[colToRow[c]][c]);
+        Collections.sort(assigned);
+        outcome.addAll(assigned);
+        return outcome;
+    }
+    
+    // Minimum cost perfect matching of a square matrix (shortest augmenting paths with potentials),
+    // returns the row matched to each column
+    private static int[] solve(double[][] cost) {
+        int n = cost.length;
+        double[] u = new double[n + 1];
+        double[] v = new double[n + 1];
+        int[] p = new int[n + 1];
+        int[] way = new int[n + 1];
+        double[] minv = new double[n + 1];
+        boolean[] used = new boolean[n + 1];
+        for (int i = 1; i <= n; i++) {
+            p[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, Double.POSITIVE_INFINITY);
+            Arrays.fill(used, false);
+            do {
+                used[j0] = true;
+                int i0 = p[j0], j1 = 0;
+                double delta = Double.POSITIVE_INFINITY;
+                for (int j = 1; j <= n; j++) {
+                    if (used[j])
+                        continue;
+                    double cur = cost[i0 - 1][j - 1] - u[i0] - v[j];
+                    if (cur < minv[j]) {
+                        minv[j] = cur;
+                        way[j] = j0;
+                    }
+                    if (minv[j] < delta) {
+                        delta = minv[j];
+                        j1 = j;
+                    }
+                }
+                for (int j = 0; j <= n; j++) {
+                    if (used[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    } else
+                        minv[j] -= delta;
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+        int[] colToRow = new int[n];
+        for (int j = 1; j <= n; j++)
+            colToRow[j - 1] = p[j] - 1;
+        return colToRow;
+    }
+    
+    @Override
+    public String toString() {
+        return "[HungarianFrontierAssigner] ";
+    }
+}
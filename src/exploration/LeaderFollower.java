@@ -359,14 +359,14 @@ public class LeaderFollower {
         return (frontier.getArea() / Math.pow(agentLoc.distance(frontier.getCentre()), 4) * 100000000);
     }
 
-    private static void calculateUtilityExact(RealAgent agent, Utility ute) {
+    private static void calculateUtilityExact(RealAgent agent, Utility ute, FrontierPathSearch pathSearch) {
         Point start;
         if(ute.ID == agent.getID())
             start = agent.getLocation();
         else
             start = agent.getTeammate(ute.ID).getLocation();
 
-        Path p = agent.calculatePath(start, ute.frontier.getClosestPointInRange(agent));
+        Path p = pathSearch.calculatePath(start, ute.frontier.getClosestPointInRange(agent));
 
         if(p.found) {
             ute.path = p;
@@ -476,6 +476,12 @@ public class LeaderFollower {
 
         // Step 2:  Create priorityQueue of utility estimates (Euclidean distance)
         PriorityQueue<Utility> utilities = initializeUtilities(agent, frontiers);
+        
+        // Paths to all frontiers of interest are found with one search
+        LinkedList<Point> frontierPoints = new LinkedList<Point>();
+        for (Frontier f : frontiers)
+            frontierPoints.add(f.getClosestPointInRange(agent));
+        FrontierPathSearch pathSearch = new FrontierPathSearch(agent, frontierPoints);
 
         /*
         for(Utility p : utilities)
@@ -512,7 +518,8 @@ public class LeaderFollower {
                     agent.setLastFrontier(best.frontier);
                     agent.setCurrentGoal(best.frontier.getCentre());
                     agent.addDirtyCells(agent.getPath().getAllPathPixels());
-                    agent.setPath(best.path);
+                    agent.setPath(pathSearch.pathToFollow(agent.getLocation(), 
+                            best.frontier.getClosestPointInRange(agent), best.path));
                     return true;
                 //}
                 //else
@@ -521,7 +528,7 @@ public class LeaderFollower {
 
             // If this is an estimate, calculate true utility
             if(best.path == null)
-                calculateUtilityExact(agent, best);
+                calculateUtilityExact(agent, best, pathSearch);
 
             //System.out.println("UtilityExact: " + best.utility);
             if(best.utility >= utilities.peek().utility){
@@ -532,7 +539,8 @@ public class LeaderFollower {
                     agent.setCurrentGoal(best.frontier.getCentre());
                     if(agent.getPath() != null)
                         agent.addDirtyCells(agent.getPath().getAllPathPixels());
-                    agent.setPath(best.path);
+                    agent.setPath(pathSearch.pathToFollow(agent.getLocation(), 
+                            best.frontier.getClosestPointInRange(agent), best.path));
                     return true;
                 }
                 else {
@@ -0,0 +1,288 @@
+/*
+ *     Copyright 2010, 2015 Julian de Hoog (julian@dehoog.ca), Victor Spirin (victor.spirin@cs.ox.ac.uk)
+ *
+ *     This file is part of MRESim 2.2, a simulator for testing the behaviour
+ *     of multiple robots exploring unknown environments.
+ *
+ *     If you use MRESim, I would appreciate an acknowledgement and/or a citation
+ *     of our papers:
+ *
+ *     @inproceedings{deHoog2009,
+ *         title = "Role-Based Autonomous Multi-Robot Exploration",
+ *         author = "Julian de Hoog, Stephen Cameron and Arnoud Visser",
+ *         year = "2009",
+ *         booktitle = "International Conference on Advanced Cognitive Technologies and Applications (COGNITIVE)",
+ *         location = "Athens, Greece",
+ *         month = "November",
+ *     }
+ *
+ *     @incollection{spirin2015mresim,
+ *       title={MRESim, a Multi-robot Exploration Simulator for the Rescue Simulation League},
+ *       author={Spirin, Victor and de Hoog, Julian and Visser, Arnoud and Cameron, Stephen},
+ *       booktitle={RoboCup 2014: Robot World Cup XVIII},
+ *       pages={106--117},
+ *       year={2015},
+ *       publisher={Springer}
+ *     }
+ *
+ *     MRESim is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     MRESim is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along with MRESim.
+ *     If not, see <http://www.gnu.org/licenses/>.
+ */
+package exploration;
+
+import config.Constants;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Named timers and counters for the phases of a simulation cycle. Timers keep a log-linear
+ * histogram (like HdrHistogram, within 1/8 of the value), so percentiles can be reported
+ * without storing samples. Timers and counters are thread safe and are created once, as static
+ * fields of the class they measure. When Constants.PROFILE_CYCLES is off, start and stop do
+ * nothing and the JIT removes them.
+ * @author Victor
+ */
+public final class Profiler {
+    
+    public static final boolean ENABLED = Constants.PROFILE_CYCLES;
+    
+    // in order of creation, which is the order they are reported in
+    private static final ArrayList<Timer> timers = new ArrayList<Timer>();
+    private static final ArrayList<Counter> counters = new ArrayList<Counter>();
+    
+    private Profiler() {
+    }
+    
+    public static synchronized Timer timer(String name) {
+        for (Timer t : timers)
+            if (t.name.equals(name))
+                return t;
+        Timer t = new Timer(name);
+        timers.add(t);
+        return t;
+    }
+    
+    public static synchronized Counter counter(String name) {
+        for (Counter c : counters)
+            if (c.name.equals(name))
+                return c;
+        Counter c = new Counter(name);
+        counters.add(c);
+        return c;
+    }
+    
+    // Clears all timers and counters, called at the start of every run
+    public static synchronized void reset() {
+        for (Timer t : timers)
+            t.reset();
+        for (Counter c : counters)
+            c.reset();
+    }
+    
+    public static final class Timer {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int NUM_BUCKETS = SUB_BUCKETS * (64 - SUB_BUCKET_BITS);
+        
+        private final String name;
+        private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        
+        private Timer(String name) {
+            this.name = name;
+        }
+        
+        // Returns the value to pass to stop
+        public long start() {
+            return ENABLED ? System.nanoTime() : 0;
+        }
+        
+        public void stop(long start) {
+            if (ENABLED)
+                record(System.nanoTime() - start);
+        }
+        
+        public void record(long nanos) {
+            if (nanos < 0)
+                nanos = 0;
+            buckets.incrementAndGet(bucketOf(nanos));
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while ((nanos > max) && !maxNanos.compareAndSet(max, nanos))
+                max = maxNanos.get();
+        }
+        
+        // Values below SUB_BUCKETS get a bucket each, above that every power of two is split
+        // into SUB_BUCKETS buckets of equal width
+        private static int bucketOf(long value) {
+            if (value < SUB_BUCKETS)
+                return (int)value;
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int shift = exponent - SUB_BUCKET_BITS;
+            return SUB_BUCKETS * (shift + 1) + (int)((value >>> shift) & (SUB_BUCKETS - 1));
+        }
+        
+        private static long bucketUpperBound(int bucket) {
+            if (bucket < SUB_BUCKETS)
+                return bucket;
+            int shift = bucket / SUB_BUCKETS - 1;
+            long lower = (long)(SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+            return lower + (1L << shift) - 1;
+        }
+        
+        private void reset() {
+            for (int i = 0; i < NUM_BUCKETS; i++)
+                buckets.set(i, 0);
+            count.set(0);
+            totalNanos.set(0);
+            maxNanos.set(0);
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public long getCount() {
+            return count.get();
+        }
+        
+        public long getTotalNanos() {
+            return totalNanos.get();
+        }
+        
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+        
+        public double getMeanNanos() {
+            long n = count.get();
+            return (n == 0) ? 0 : (double)totalNanos.get() / n;
+        }
+        
+        // Smallest recorded value that at least fraction of the samples are below or equal to
+        public long getPercentileNanos(double fraction) {
+            long n = count.get();
+            if (n == 0)
+                return 0;
+            long rank = Math.max(1, (long)Math.ceil(fraction * n));
+            long seen = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank)
+                    return Math.min(bucketUpperBound(i), maxNanos.get());
+            }
+            return maxNanos.get();
+        }
+    }
+    
+    public static final class Counter {
+        private final String name;
+        private final AtomicLong value = new AtomicLong();
+        
+        private Counter(String name) {
+            this.name = name;
+        }
+        
+        public void add(long n) {
+            if (ENABLED)
+                value.addAndGet(n);
+        }
+        
+        public void increment() {
+            add(1);
+        }
+        
+        private void reset() {
+            value.set(0);
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public long get() {
+            return value.get();
+        }
+    }
+    
+    private static double toMs(double nanos) {
+        return nanos / 1000000.0;
+    }
+    
+    public static synchronized String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-28s %8s %12s %10s %10s %10s %10s %10s%n", 
+                "timer", "count", "total ms", "mean ms", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        for (Timer t : timers) {
+            if (t.getCount() == 0)
+                continue;
+            sb.append(String.format("%-28s %8d %12.1f %10.3f %10.3f %10.3f %10.3f %10.3f%n", 
+                    t.name, t.getCount(), toMs(t.getTotalNanos()), toMs(t.getMeanNanos()), 
+                    toMs(t.getPercentileNanos(0.5)), toMs(t.getPercentileNanos(0.9)), 
+                    toMs(t.getPercentileNanos(0.99)), toMs(t.getMaxNanos())));
+        }
+        for (Counter c : counters)
+            sb.append(String.format("%-28s %8d%n", c.name, c.get()));
+        return sb.toString();
+    }
+    
+    public static synchronized JSONObject toJSON() {
+        JSONArray timerList = new JSONArray();
+        for (Timer t : timers) {
+            JSONObject timer = new JSONObject();
+            timer.put("name", t.name);
+            timer.put("count", t.getCount());
+            timer.put("totalMs", toMs(t.getTotalNanos()));
+            timer.put("meanMs", toMs(t.getMeanNanos()));
+            timer.put("p50Ms", toMs(t.getPercentileNanos(0.5)));
+            timer.put("p90Ms", toMs(t.getPercentileNanos(0.9)));
+            timer.put("p99Ms", toMs(t.getPercentileNanos(0.99)));
+            timer.put("maxMs", toMs(t.getMaxNanos()));
+            timerList.put(timer);
+        }
+        JSONObject counterValues = new JSONObject();
+        for (Counter c : counters)
+            counterValues.put(c.name, c.get());
+        JSONObject profile = new JSONObject();
+        profile.put("timers", timerList);
+        profile.put("counters", counterValues);
+        return profile;
+    }
+    
+    // Prints the summary table and writes the JSON version to fileName
+    public static void dump(String title, String fileName) {
+        if (!ENABLED)
+            return;
+        System.out.println("[Profiler] " + title + "\n" + getSummary());
+        try {
+            File file = new File(fileName);
+            if (file.getParentFile() != null)
+                file.getParentFile().mkdirs();
+            PrintWriter outFile = new PrintWriter(new FileWriter(file));
+            outFile.println(toJSON().toString(2));
+            outFile.close();
+        } catch (IOException e) {
+            System.out.println("[Profiler] Error writing to file " + fileName);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *     Copyright 2010, 2015 Julian de Hoog (julian@dehoog.ca), Victor Spirin (victor.spirin@cs.ox.ac.uk)
+ *
+ *     This file is part of MRESim 2.2, a simulator for testing the behaviour
+ *     of multiple robots exploring unknown environments.
+ *
+ *     If you use MRESim, I would appreciate an acknowledgement and/or a citation
+ *     of our papers:
+ *
+ *     @inproceedings{deHoog2009,
+ *         title = "Role-Based Autonomous Multi-Robot Exploration",
+ *         author = "Julian de Hoog, Stephen Cameron and Arnoud Visser",
+ *         year = "2009",
+ *         booktitle = "International Conference on Advanced Cognitive Technologies and Applications (COGNITIVE)",
+ *         location = "Athens, Greece",
+ *         month = "November",
+ *     }
+ *
+ *     @incollection{spirin2015mresim,
+ *       title={MRESim, a Multi-robot Exploration Simulator for the Rescue Simulation League},
+ *       author={Spirin, Victor and de Hoog, Julian and Visser, Arnoud and Cameron, Stephen},
+ *       booktitle={RoboCup 2014: Robot World Cup XVIII},
+ *       pages={106--117},
+ *       year={2015},
+ *       publisher={Springer}
+ *     }
+ *
+ *     MRESim is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     MRESim is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along with MRESim.
+ *     If not, see <http://www.gnu.org/licenses/>.
+ */
+package exploration;
+
+import java.util.Random;
+
+/**
+ * Derives independent random number streams from a single run seed, so a run can be repeated
+ * exactly. Each agent gets its own stream (keyed by robot number), which keeps results the same
+ * no matter in which order or on which thread the agents step.
+ * @author Victor
+ */
+public final class RandomStreams {
+    
+    // Stream used by SimulationFramework for dynamic debris
+    public static final long DEBRIS_STREAM = -1;
+    
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    
+    private RandomStreams() {
+    }
+    
+    // Seed for a run that was not given one; print it so the run can be repeated
+    public static long newRunSeed() {
+        return mix(System.currentTimeMillis() ^ System.nanoTime());
+    }
+    
+    // Seed of stream number stream within a run, also used to give each batch run its own seed
+    public static long streamSeed(long runSeed, long stream) {
+        return mix(runSeed + (stream + 1) * GOLDEN_GAMMA);
+    }
+    
+    public static Random create(long runSeed, long stream) {
+        return new Random(streamSeed(runSeed, stream));
+    }
+    
+    // SplitMix64 finaliser, spreads nearby seeds (robot numbers, run numbers) over the whole range
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -53,9 +53,9 @@ import path.Path;
 
 public class RandomWalk {
     
-    public static Random generator = new Random(Constants.RANDOM_SEED);
-    
     public static Point takeStep(RealAgent agent) {
+        // each agent draws from its own stream, so the steps do not depend on the order agents step in
+        Random generator = agent.getRandom();
         int maxcounter = 100;
         int ranVar = 0, newX = agent.getX(), newY = agent.getY(), counter = 0;
         
@@ -323,7 +323,8 @@ public class RoleBasedExploration {
             
             agent.getRendezvousStrategy().processReturnToParentReplan();
             
-            Path path = agent.calculatePath(agent.getLocation(), rvd.getParentRendezvous().getChildLocation());
+            Path path = agent.calculatePath(agent.getLocation(), rvd.getParentRendezvous().getChildLocation(), 
+                    RealAgent.PathPlanningMode.Incremental);
             //<editor-fold defaultstate="collapsed" desc="If path not found, try A*">
             if (!path.found)
             {
@@ -498,8 +499,17 @@ public class RoleBasedExploration {
                 {
                     //<editor-fold defaultstate="collapsed" desc="If path not found, try A*">
                     System.out.println(agent.toString() + "ERROR!  Could not find full path! Trying pure A*");
+                    Path partialPath = path.getPartialPath();
                     path = agent.calculatePath(agent.getLocation(), agent.getRendezvousAgentData().getChildRendezvous().getParentLocation(), true);
                     //</editor-fold>
+                    //<editor-fold defaultstate="collapsed" desc="If the first search ran out of budget, head towards the point closest to the RV it reached">
+                    if(!path.found && (partialPath != null)) {
+                        System.out.println(agent.toString() + "Path search ran out of budget, following partial path");
+                        agent.setPath(partialPath);
+                        agent.setCurrentGoal(agent.getRendezvousAgentData().getChildRendezvous().getParentLocation());
+                        return((Point)agent.getPath().getPoints().remove(0));
+                    }
+                    //</editor-fold>
                     //<editor-fold defaultstate="collapsed" desc="If path still not found, take random step">
                     if(!path.found) {
                         System.out.println(agent.toString() + "!!!ERROR!  Could not find full path! Taking random step");
@@ -540,7 +550,8 @@ public class RoleBasedExploration {
             Path path = agent.getRendezvousStrategy().processGoToChildReplan();            
             
             if (path == null)
-                path = agent.calculatePath(agent.getLocation(), rvd.getChildRendezvous().getParentLocation());
+                path = agent.calculatePath(agent.getLocation(), rvd.getChildRendezvous().getParentLocation(), 
+                        RealAgent.PathPlanningMode.Incremental);
             //<editor-fold defaultstate="collapsed" desc="Could not find full path! Trying pure A*">
             if (!path.found)
             {
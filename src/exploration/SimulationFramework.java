@@ -57,6 +57,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.Point;
 import java.awt.Polygon;
+import java.awt.Rectangle;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -94,15 +95,20 @@ public class SimulationFramework implements ActionListener {
     SimulatorConfig simConfig;
 
     Polygon agentRange[];                       // For visualization of agents' comm ranges
+    CommRangeCache commRangeCache;              // Computes agentRange in the background when rendered
     
     Timer timer;                                // Drives simulation steps
     Random random;                              // For generating random debris
+    long runSeed;                               // All random streams of the current run derive from this
+    long worldHash;                             // Running hash of the world state, for determinism checks
 
     int[] debrisTimer;                          // For aisleRoom random debris exercise (AAMAS2010)
     
     // Communication
     int[][] directCommTable;
     int[][] multihopCommTable;
+    LinkStateCache commLinkCache;               // Direct links from last cycle, reused for agents that did not move
+    SimulatorConfig.commtype commLinkCacheModel; // Comm model the cached links were computed with
 
     // Interesting data
     int timeElapsed;
@@ -116,13 +122,27 @@ public class SimulationFramework implements ActionListener {
     double avgTimeLastCommand;
     double totalDistanceTraveled;
     int numSwaps;
-    long time1 = 0, time2 = 0, time3 = 0, time4 = 0, time5 = 0;
+
+    // Phases of a cycle, see Profiler
+    private static final Profiler.Timer CYCLE_TIMER = Profiler.timer("cycle");
+    private static final Profiler.Timer COMM_DETECT_TIMER = Profiler.timer("commDetect");
+    private static final Profiler.Timer AGENT_STEPS_TIMER = Profiler.timer("agentSteps");
+    private static final Profiler.Timer COMM_MERGE_TIMER = Profiler.timer("commMerge");
+    private static final Profiler.Timer MESSAGE_EXCHANGE_TIMER = Profiler.timer("commMerge.messageExchange");
+    private static final Profiler.Timer ROLE_SWITCH_TIMER = Profiler.timer("roleSwitch");
+    private static final Profiler.Timer DEBRIS_TIMER = Profiler.timer("debris");
+    private static final Profiler.Timer GLOBAL_DATA_TIMER = Profiler.timer("globalData");
+    private static final Profiler.Timer GUI_TIMER = Profiler.timer("gui");
+    private static final Profiler.Timer LOGGING_TIMER = Profiler.timer("logging");
+    // Totals kept by Path, reported per run
+    private static final Profiler.Counter PATH_SEARCHES = Profiler.counter("pathSearches");
+    private static final Profiler.Counter PATH_BUDGET_EXHAUSTED = Profiler.counter("pathSearchBudgetExhausted");
+    long pathSearchesAtStart, pathBudgetExhaustedAtStart;
 
     RobotTeamConfig robotTeamConfig;
     
 
     public SimulationFramework(MainGUI maingui, RobotTeamConfig newRobotTeamConfig, SimulatorConfig newSimConfig, ExplorationImage img) {
-        random = new Random();
         mainGUI = maingui;
         image = img;
         simConfig = newSimConfig;
@@ -147,7 +167,28 @@ public class SimulationFramework implements ActionListener {
         totalDistanceTraveled = 0;
         numSwaps = 0;
 
+        if (simConfig.getUseFixedSeed())
+            runSeed = isBatch ? RandomStreams.streamSeed(simConfig.getRandomSeed(), runNumber) : simConfig.getRandomSeed();
+        else
+            runSeed = RandomStreams.newRunSeed();
+        System.out.println(this.toString() + "Run seed is " + runSeed);
+        random = RandomStreams.create(runSeed, RandomStreams.DEBRIS_STREAM);
+        worldHash = runSeed;
+        
+        Profiler.reset();
+        TopologicalMap.resetPathCache(!simConfig.getUseFixedSeed());
+        pathSearchesAtStart = Path.getSearchCount();
+        pathBudgetExhaustedAtStart = Path.getBudgetExhaustedCount();
+
         createAgents(robotTeamConfig);
+        commLinkCache = new LinkStateCache();
+        commLinkCacheModel = simConfig.getCommModel();
+        
+        // Precompute signal propagation from the ComStation
+        if (Constants.USE_PROPAGATION_MAP && simConfig.getCommModel() == SimulatorConfig.commtype.PropModel1)
+            PropModel1.setPropagationMap(PropagationMap.loadOrBuild(env, agent[Constants.BASE_STATION_AGENT_ID].getLocation()));
+        else
+            PropModel1.setPropagationMap(null);
 
         // Initialize Timer
         timer = new Timer((Constants.TIME_INCREMENT*10+1) - simConfig.getSimRate()*Constants.TIME_INCREMENT, this);
@@ -168,6 +209,7 @@ public class SimulationFramework implements ActionListener {
         agent = new RealAgent[numRobots];
         TeammateAgent teammate[] = new TeammateAgent[numRobots];
         agentRange = new Polygon[numRobots];
+        commRangeCache = new CommRangeCache(numRobots);
         
         // Create ComStation
         agent[0] = new ComStation(env.getColumns(), env.getRows(), robotTeamConfig.getRobotTeam().get(1), simConfig);
@@ -183,6 +225,9 @@ public class SimulationFramework implements ActionListener {
             agent[i].setSimFramework(this); //for logging only
         }
         
+        for(int i=0; i<numRobots; i++)
+            agent[i].setRandom(RandomStreams.create(runSeed, agent[i].getRobotNumber()));
+        
         // Give each agent its teammates
         for(int i=0; i<numRobots; i++)
             for(int j=0; j<numRobots; j++)
@@ -216,6 +261,7 @@ public class SimulationFramework implements ActionListener {
     private void simulationCycle() {
         long realtimeStartCycle; 
         realtimeStartCycle = System.currentTimeMillis();
+        long cycleStart = CYCLE_TIMER.start();
         if (timeElapsed == 1) simStartTime = System.currentTimeMillis();
         System.out.println("\n" + this.toString() + "************** CYCLE " + timeElapsed + " ******************\n");
         
@@ -228,7 +274,9 @@ public class SimulationFramework implements ActionListener {
         for (int i = 0; i < numRobots; i++)
             agent[i].flushComms();
         
+        long phaseStart = COMM_DETECT_TIMER.start();
         detectCommunication();
+        COMM_DETECT_TIMER.stop(phaseStart);
         
         for(int i=0; i<numRobots-1; i++)
             for(int j=i+1; j<numRobots; j++)
@@ -236,19 +284,19 @@ public class SimulationFramework implements ActionListener {
                     agent[i].getTeammate(agent[j].getID()).setInRange(true);
                     agent[j].getTeammate(agent[i].getID()).setInRange(true);
                 }
+        phaseStart = AGENT_STEPS_TIMER.start();
         agentSteps();               // move agents, simulate sensor data
-        System.out.println(this.toString() + "agentSteps took " + (System.currentTimeMillis()-realtimeStartCycle) + "ms.\n");
-        time1 += (System.currentTimeMillis()-realtimeStartCycle);
+        AGENT_STEPS_TIMER.stop(phaseStart);
         //if(timeElapsed % 7 == 0 || timeElapsed % 7 == 1) {
-        long localTimer = System.currentTimeMillis();
+        phaseStart = COMM_MERGE_TIMER.start();
         simulateCommunication();    // simulate communication
-        System.out.println(this.toString() + "simulateCommunication took " + (System.currentTimeMillis()-localTimer) + "ms.\n");
-        time2 += (System.currentTimeMillis()-localTimer);
+        COMM_MERGE_TIMER.stop(phaseStart);
         //timer = System.currentTimeMillis();
         if ((simConfig != null) && (simConfig.getExpAlgorithm() == SimulatorConfig.exptype.RoleBasedExploration)
                 && (simConfig.roleSwitchAllowed()))
         {
             //Role switch should ideally be done by individual agents as they communicate, rather than here.
+            phaseStart = ROLE_SWITCH_TIMER.start();
             switchRoles();              // switch roles
             //System.out.println(this.toString() + "switchRoles took " + (System.currentTimeMillis()-timer) + "ms.\n");
             //timer = System.currentTimeMillis();
@@ -269,39 +317,35 @@ public class SimulationFramework implements ActionListener {
                                 agent[i].setCurrentGoal(agent[i].getRendezvousAgentData().getChildRendezvous().getParentLocation());
                         }
             //System.out.println(this.toString() + "Second switch roles check took " + (System.currentTimeMillis()-timer) + "ms.\n");
+            ROLE_SWITCH_TIMER.stop(phaseStart);
 
         }
-        //timer = System.currentTimeMillis();   
+        phaseStart = DEBRIS_TIMER.start();
         simulateDebris();           // simulate dynamic environment
-        //System.out.println(this.toString() + "simulateDebris took " + (System.currentTimeMillis()-timer) + "ms.\n");
-        localTimer = System.currentTimeMillis();
+        DEBRIS_TIMER.stop(phaseStart);
+        phaseStart = GLOBAL_DATA_TIMER.start();
         if (timeElapsed % Constants.UPDATE_AGENT_KNOWLEDGE_INTERVAL == 0)
         {
             updateAgentKnowledgeData();
         }
         updateGlobalData();         // update data
-        //System.out.println(this.toString() + "updateGlobalData took " + (System.currentTimeMillis()-realtimeStartCycle) + "ms.\n");
-       
-        System.out.println(this.toString() + "updateGlobalData took " + (System.currentTimeMillis()-localTimer) + "ms.\n");
-        time3 += (System.currentTimeMillis()-localTimer);
-        //timer = System.currentTimeMillis();
-        
-        //System.out.println(this.toString() + "updateAgentKnowledgeData took " + (System.currentTimeMillis()-timer) + "ms.\n");
-        localTimer = System.currentTimeMillis();
+        GLOBAL_DATA_TIMER.stop(phaseStart);
+        phaseStart = GUI_TIMER.start();
         updateGUI();                // update GUI
-        System.out.println(this.toString() + "updateGUI took " + (System.currentTimeMillis()-localTimer) + "ms.\n");
-        time4 += (System.currentTimeMillis()-localTimer);
-        //timer = System.currentTimeMillis();
+        GUI_TIMER.stop(phaseStart);
+        phaseStart = LOGGING_TIMER.start();
         logging();                  // perform logging as required
+        LOGGING_TIMER.stop(phaseStart);
         //if ((timeElapsed % 10) == 0) verifyNoInfoGotLost(); //verify relaying works fine
-        //System.out.println(this.toString() + "logging took " + (System.currentTimeMillis()-timer) + "ms.\n");
+        CYCLE_TIMER.stop(cycleStart);
         int currentCycleTime = (int)(System.currentTimeMillis()-realtimeStartCycle);
         System.out.println(this.toString() + "Cycle complete, took " + currentCycleTime + "ms.\n");
         //avgCycleTime = (((timeElapsed - 1) * avgCycleTime) + currentCycleTime) / timeElapsed;
+        if (simConfig.getCheckDeterminism())
+            checkDeterminism();
         checkPause();               // check whether user wanted to pause
         avgCycleTime = (int)(System.currentTimeMillis() - simStartTime) / timeElapsed;
         checkRunFinish();           // for scripting multiple runs, to max number of cycles
-        System.out.println("Time1 = " + time1 + ", time2 = " + time2 + ", time3 = " + time3 +", time4 = " + time4);
     }
     
 // </editor-fold>     
@@ -469,7 +513,6 @@ public class SimulationFramework implements ActionListener {
             reset();
         }
         //simConfig.TARGET_INFO_RATIO = 0.90;
-        RandomWalk.generator.setSeed(Constants.RANDOM_SEED);
         System.out.println(this.toString() + "Starting exploration!");
         timer.start();
         simStartTime = System.currentTimeMillis();
@@ -508,6 +551,32 @@ public class SimulationFramework implements ActionListener {
         return (((double)agent[0].getStats().getAreaKnown()/(double)totalArea) >= Constants.TERRITORY_PERCENT_EXPLORED_GOAL);
     }
 
+    // Prints a hash of the world state; runs with the same seed must print the same hashes every cycle
+    private void checkDeterminism() {
+        long hash = timeElapsed;
+        for (int i = 0; i < numRobots; i++) {
+            hash = RandomStreams.mix(hash * 31 + agent[i].getX());
+            hash = RandomStreams.mix(hash * 31 + agent[i].getY());
+            hash = RandomStreams.mix(hash * 31 + Double.doubleToLongBits(agent[i].getHeading()));
+            hash = RandomStreams.mix(hash * 31 + agent[i].getState().ordinal());
+            hash = RandomStreams.mix(hash * 31 + agent[i].getRole().ordinal());
+            hash = RandomStreams.mix(hash * 31 + agent[i].getOccupancyGrid().getFreeAndObstacleHash());
+        }
+        hash = RandomStreams.mix(hash * 31 + env.getVersion());
+        worldHash = RandomStreams.mix(worldHash ^ hash);
+        System.out.println(this.toString() + "World hash at cycle " + timeElapsed + ": " 
+                + Long.toHexString(hash) + ", run so far: " + Long.toHexString(worldHash));
+    }
+    
+    private void dumpProfile() {
+        PATH_SEARCHES.add(Path.getSearchCount() - pathSearchesAtStart);
+        PATH_BUDGET_EXHAUSTED.add(Path.getBudgetExhaustedCount() - pathBudgetExhaustedAtStart);
+        pathSearchesAtStart = Path.getSearchCount();
+        pathBudgetExhaustedAtStart = Path.getBudgetExhaustedCount();
+        Profiler.dump("Run " + runNumber + " (seed " + runSeed + "), " + timeElapsed + " cycles", 
+                System.getProperty("user.dir") + "/logs/profile_run" + runNumber + ".json");
+    }
+    
     private void checkRunFinish() {
         boolean allAgentsAtBase = true;
         
@@ -518,6 +587,7 @@ public class SimulationFramework implements ActionListener {
         
         if(timeElapsed >= 3000 || allAgentsDone() || allAgentsAtBase) {
             timer.stop();
+            dumpProfile();
             runNumber++;
             if(isBatch && (runNumber < runNumMax))
                 restart();
@@ -531,6 +601,7 @@ public class SimulationFramework implements ActionListener {
     
     public void kill() {
         timer.stop();
+        dumpProfile();
         System.out.println(this.toString() + "Resetting exploration!");
     }
     
@@ -704,17 +775,14 @@ public class SimulationFramework implements ActionListener {
         for(int i=0; i<numRobots-1; i++)
             for(int j=i+1; j<numRobots; j++)
                 if(multihopCommTable[i][j] == 1) {                        
-                    long realtimeStart2 = System.currentTimeMillis();
+                    long exchangeStart = MESSAGE_EXCHANGE_TIMER.start();
                     DataMessage msgFromFirst = new DataMessage(agent[i], directCommTable[i][j]);
                     DataMessage msgFromSecond = new DataMessage(agent[j], directCommTable[i][j]);
 
                     agent[i].receiveMessage(msgFromSecond);
                     agent[j].receiveMessage(msgFromFirst);
 
-                    System.out.println(Constants.INDENT + "Communication between " +
-                                        agent[i].getName() + " and " +
-                                        agent[j].getName() + " took " + 
-                            (System.currentTimeMillis()-realtimeStart2) + "ms.");
+                    MESSAGE_EXCHANGE_TIMER.stop(exchangeStart);
                     // For periodic return frontier exp
                     if(simConfig.getExpAlgorithm() == SimulatorConfig.exptype.FrontierExploration &&
                        simConfig.getFrontierAlgorithm() == SimulatorConfig.frontiertype.PeriodicReturn &&
@@ -844,15 +912,17 @@ public class SimulationFramework implements ActionListener {
         directCommTable = new int[numRobots][numRobots];
         multihopCommTable = new int[numRobots][numRobots];
         
+        if(commLinkCacheModel != simConfig.getCommModel()) {
+            commLinkCache = new LinkStateCache();
+            commLinkCacheModel = simConfig.getCommModel();
+        }
+        
         switch(simConfig.getCommModel()) {
             case StaticCircle:          directCommTable = StaticCircle.detectCommunication(env, agent);
                                         break;
-            case DirectLine:            directCommTable = DirectLine.detectCommunication(env, agent);
+            case DirectLine:            directCommTable = DirectLine.detectCommunication(env, agent, commLinkCache);
                                         break;
-            case PropModel1:            directCommTable = PropModel1.detectCommunication(env, agent);
-                                        for(int i=0; i<numRobots; i++)
-                                            if(mainGUI.getRobotPanel(i).showCommRange())
-                                                agentRange[i] = PropModel1.getRange(env, agent[i]);
+            case PropModel1:            directCommTable = PropModel1.detectCommunication(env, agent, commLinkCache);
                                         break;
             default:                    break;
         }
@@ -1162,6 +1232,7 @@ public class SimulationFramework implements ActionListener {
     }
 
     private void logScreenshot() {
+        updateAgentRanges();
         image.fullUpdate(mainGUI.getShowSettings(), mainGUI.getShowSettingsAgents(), env, agent, agentRange);
         image.saveScreenshot(simConfig.getLogScreenshotsDirname(), timeElapsed);
     }
@@ -1197,6 +1268,7 @@ public class SimulationFramework implements ActionListener {
     {
         long realtimeStart = System.currentTimeMillis();
         
+        updateAgentRanges();
         if(full){
             //System.out.print(this.toString() + "Full Image Update ... ");
             image.fullUpdate(mainGUI.getShowSettings(), mainGUI.getShowSettingsAgents(), env, agent, agentRange);
@@ -1210,6 +1282,16 @@ public class SimulationFramework implements ActionListener {
         //System.out.println("Complete, took " + (System.currentTimeMillis()-realtimeStart) + "ms.");
     }
     
+    // Comm range polygons are only needed for drawing; they are computed in the background and
+    // may lag a frame behind the agents
+    private void updateAgentRanges() {
+        if(simConfig.getCommModel() != SimulatorConfig.commtype.PropModel1)
+            return;
+        for(int i=0; i<numRobots; i++)
+            if(mainGUI.getRobotPanel(i).showCommRange())
+                agentRange[i] = commRangeCache.getRange(i, env, agent[i]);
+    }
+    
     public int getTrueJointAreaKnown()
     {
         int known = 0;
@@ -1419,12 +1501,20 @@ public class SimulationFramework implements ActionListener {
         for(int i=yTop; i<yTop+67; i++)
             for(int j=250; j<258; j++)
                 env.setStatus(j, i, Status.obstacle);
+        environmentChanged(new Rectangle(250, yTop, 8, 67));
     }
 
     private void openGate(int yTop) {
         for(int i=yTop; i<yTop+67; i++)
             for(int j=250; j<258; j++)
                 env.setStatus(j, i, Status.unexplored);
+        environmentChanged(new Rectangle(250, yTop, 8, 67));
+    }
+    
+    // Debris must report the area it changed, so that data derived from the walls can be updated
+    private void environmentChanged(Rectangle area) {
+        if (PropModel1.getPropagationMap() != null)
+            PropModel1.getPropagationMap().invalidate(area);
     }
 
     
@@ -273,7 +273,7 @@ public class UtilityExploration {
             }
             
             agent.forceUpdateTopologicalMap(false);
-            Path path = agent.calculatePath(agent.getLocation(), baseLocation);
+            Path path = agent.calculatePath(agent.getLocation(), baseLocation, RealAgent.PathPlanningMode.Incremental);
             //<editor-fold defaultstate="collapsed" desc="If path not found, try A*">
             if (!path.found)
             {
@@ -0,0 +1,130 @@
+/*
+ *     Copyright 2010, 2015 Julian de Hoog (julian@dehoog.ca), Victor Spirin (victor.spirin@cs.ox.ac.uk)
+ *
+ *     This file is part of MRESim 2.2, a simulator for testing the behaviour
+ *     of multiple robots exploring unknown environments.
+ *
+ *     If you use MRESim, I would appreciate an acknowledgement and/or a citation
+ *     of our papers:
+ *
+ *     @inproceedings{deHoog2009,
+ *         title = "Role-Based Autonomous Multi-Robot Exploration",
+ *         author = "Julian de Hoog, Stephen Cameron and Arnoud Visser",
+ *         year = "2009",
+ *         booktitle = "International Conference on Advanced Cognitive Technologies and Applications (COGNITIVE)",
+ *         location = "Athens, Greece",
+ *         month = "November",
+ *     }
+ *
+ *     @incollection{spirin2015mresim,
+ *       title={MRESim, a Multi-robot Exploration Simulator for the Rescue Simulation League},
+ *       author={Spirin, Victor and de Hoog, Julian and Visser, Arnoud and Cameron, Stephen},
+ *       booktitle={RoboCup 2014: Robot World Cup XVIII},
+ *       pages={106--117},
+ *       year={2015},
+ *       publisher={Springer}
+ *     }
+ *
+ *     MRESim is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     MRESim is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along with MRESim.
+ *     If not, see <http://www.gnu.org/licenses/>.
+ */
+package exploration;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Shared pool of daemon worker threads for CPU heavy planning work (comm link tests, path costs, ...).
+ * parallelFor splits an index range into chunks; the calling thread works on chunks too and only
+ * waits for chunks already being run by helpers, so it is safe to call from agent step threads and
+ * from tasks that are themselves running on the pool.
+ */
+public class WorkerPool {
+    
+    private static final int NUM_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    
+    private static final ExecutorService pool = Executors.newFixedThreadPool(NUM_THREADS, new ThreadFactory() {
+        private final AtomicInteger counter = new AtomicInteger();
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "[WorkerPool] worker " + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    
+    public interface RangeTask {
+        // Process indices from (inclusive) to (exclusive)
+        void run(int from, int to);
+    }
+    
+    public static int getNumThreads() {
+        return NUM_THREADS;
+    }
+    
+    public static void execute(Runnable task) {
+        pool.execute(task);
+    }
+    
+    // Runs task over [0, n) using up to maxHelpers pool threads in addition to the caller, and waits for it
+    public static void parallelFor(final int n, final RangeTask task, int maxHelpers) {
+        if (n <= 0)
+            return;
+        final int chunkSize = Math.max(1, n / (NUM_THREADS * 4));
+        final int numChunks = (n + chunkSize - 1) / chunkSize;
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final CountDownLatch chunksDone = new CountDownLatch(numChunks);
+        final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+        
+        Runnable worker = new Runnable() {
+            public void run() {
+                int chunk;
+                while ((chunk = nextChunk.getAndIncrement()) < numChunks) {
+                    try {
+                        task.run(chunk * chunkSize, Math.min(n, (chunk + 1) * chunkSize));
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        chunksDone.countDown();
+                    }
+                }
+            }
+        };
+        
+        int helpers = Math.min(Math.min(maxHelpers, NUM_THREADS - 1), numChunks - 1);
+        for (int i = 0; i < helpers; i++)
+            pool.execute(worker);
+        worker.run();
+        
+        boolean interrupted = false;
+        while (true) {
+            try {
+                chunksDone.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;     // helpers may still be writing results, so keep waiting
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        if (failure.get() != null)
+            throw failure.get();
+    }
+    
+    public static void parallelFor(int n, RangeTask task) {
+        parallelFor(n, task, NUM_THREADS - 1);
+    }
+}
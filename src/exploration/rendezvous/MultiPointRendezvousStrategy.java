@@ -45,14 +45,18 @@ import agents.RealAgent;
 import agents.TeammateAgent;
 import communication.CommLink;
 import communication.PropModel1;
+import communication.SpatialIndex;
 import config.Constants;
 import environment.Frontier;
 import environment.OccupancyGrid;
 import exploration.NearRVPoint;
+import exploration.WorkerPool;
 import java.awt.Point;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.PriorityQueue;
 import org.apache.commons.math3.random.SobolSequenceGenerator;
+import path.DistanceField;
 import path.Path;
 import static exploration.RoleBasedExploration.timeElapsed;
 import java.util.List;
@@ -460,7 +464,12 @@ public class MultiPointRendezvousStrategy implements IRendezvousStrategy {
     }
     
     public static List<NearRVPoint> SampleEnvironmentPoints(RealAgent ag, double density) {
-        LinkedList<NearRVPoint> genPoints = generateSobolPoints(ag.getOccupancyGrid(), density);
+        LinkedList<NearRVPoint> genPoints;
+        if (Constants.USE_INCREMENTAL_SAMPLE_POINTS) {
+            ag.getSamplePoints().update(ag, density);
+            genPoints = ag.getSamplePoints().getPoints();
+        } else
+            genPoints = generateSobolPoints(ag.getOccupancyGrid(), density);
         //add base station to it. Could also add any special points here as well
         NearRVPoint base = new NearRVPoint(ag.getTeammate(Constants.BASE_STATION_TEAMMATE_ID).getX(), 
                 ag.getTeammate(Constants.BASE_STATION_TEAMMATE_ID).getY());
@@ -470,33 +479,79 @@ public class MultiPointRendezvousStrategy implements IRendezvousStrategy {
     }
     
     //This method finds comm connections between generatedPoints, and returns the subset of points within comm range
-    //of base station
+    //of base station.
+    //Only pairs of points in neighbouring cells of a SpatialIndex are tested, each unordered pair is tested once
+    //(links are treated as symmetric) and the tests run in parallel on the WorkerPool.
     public static List<CommLink> FindCommLinks(List<NearRVPoint> generatedPoints, RealAgent ag) {
+        if (Constants.USE_INCREMENTAL_SAMPLE_POINTS)
+            return ag.getSamplePoints().findCommLinks(generatedPoints, ag);
+        
         //LinkedList<CommLink> commLinks = new LinkedList<CommLink>();
         LinkedList<CommLink> connsToBase = new LinkedList<CommLink>();
         NearRVPoint base = new NearRVPoint(ag.getTeammate(Constants.BASE_STATION_TEAMMATE_ID).getX(), 
                 ag.getTeammate(Constants.BASE_STATION_TEAMMATE_ID).getY());
         
-        for (NearRVPoint p1: generatedPoints) {
-            for (NearRVPoint p2: generatedPoints) {
-                if (p1.distance(p2) <= PropModel1.getMaxRange(ag.getCommRange())) {
+        final NearRVPoint[] points = generatedPoints.toArray(new NearRVPoint[generatedPoints.size()]);
+        final OccupancyGrid grid = ag.getOccupancyGrid();
+        final double commRange = ag.getCommRange();
+        final double maxRange = PropModel1.getMaxRange(commRange);
+        final int[] pairs = SpatialIndex.forPoints(generatedPoints, maxRange).getCandidatePairs();
+        final int[] pairWalls = new int[pairs.length / 2]; // -1 if not connected
+        
+        WorkerPool.parallelFor(pairWalls.length, new WorkerPool.RangeTask() {
+            public void run(int from, int to) {
+                for (int k = from; k < to; k++) {
+                    NearRVPoint p1 = points[pairs[2*k]];
+                    NearRVPoint p2 = points[pairs[2*k+1]];
+                    pairWalls[k] = -1;
                     //TODO: range should be min of ours and our teammate's
-                    if (PropModel1.isConnected(ag.getOccupancyGrid(), ag.getCommRange(), (Point)p1, (Point)p2)) {
+                    if (p1.distance(p2) <= maxRange && PropModel1.isConnected(grid, commRange, (Point)p1, (Point)p2)) {
                         //check if connection is line of sight?
-                        int numWalls = ag.getOccupancyGrid().numObstaclesOnLine(p1.x, p1.y, p2.x, p2.y);
-                        
-                        CommLink link = new CommLink(p1, p2);
-                        link.numObstacles = numWalls;
-                        //commLinks.add(link);
-                        p1.commLinks.add(link);
-                        if (p1.equals(base)) {
-                            System.out.println(Constants.INDENT + "Base is " + p1 + ", adding connected point " + p2);                            
-                            connsToBase.add(link);
-                        }
-                        //commLinks.add(new CommLink(p2, p1, null, null));
+                        pairWalls[k] = grid.numObstaclesOnLine(p1.x, p1.y, p2.x, p2.y);
                     }
                 }
             }
+        });
+        
+        // Per point arrays of connected points, each entry packed as (point index << 32 | number of walls).
+        // Every point is connected to itself.
+        int[] numLinks = new int[points.length];
+        for (int i = 0; i < points.length; i++)
+            numLinks[i] = 1;
+        for (int k = 0; k < pairWalls.length; k++)
+            if (pairWalls[k] >= 0) {
+                numLinks[pairs[2*k]]++;
+                numLinks[pairs[2*k+1]]++;
+            }
+        long[][] links = new long[points.length][];
+        for (int i = 0; i < points.length; i++) {
+            links[i] = new long[numLinks[i]];
+            numLinks[i] = 0;
+            int selfWalls = grid.numObstaclesOnLine(points[i].x, points[i].y, points[i].x, points[i].y);
+            links[i][numLinks[i]++] = ((long)i << 32) | selfWalls;
+        }
+        for (int k = 0; k < pairWalls.length; k++)
+            if (pairWalls[k] >= 0) {
+                int i = pairs[2*k];
+                int j = pairs[2*k+1];
+                links[i][numLinks[i]++] = ((long)j << 32) | pairWalls[k];
+                links[j][numLinks[j]++] = ((long)i << 32) | pairWalls[k];
+            }
+        
+        // Keep links in the order of generatedPoints, as when every pair was tested in a double loop
+        for (int i = 0; i < points.length; i++) {
+            Arrays.sort(links[i]);
+            NearRVPoint p1 = points[i];
+            for (int k = 0; k < links[i].length; k++) {
+                CommLink link = new CommLink(p1, points[(int)(links[i][k] >>> 32)]);
+                link.numObstacles = (int)(links[i][k] & 0xFFFFFFFFL);
+                //commLinks.add(link);
+                p1.commLinks.add(link);
+                if (p1.equals(base)) {
+                    System.out.println(Constants.INDENT + "Base is " + p1 + ", adding connected point " + link.getRemotePoint());
+                    connsToBase.add(link);
+                }
+            }
         }
         
         return connsToBase;
@@ -542,41 +597,61 @@ public class MultiPointRendezvousStrategy implements IRendezvousStrategy {
     * @param connectionsToBase
     */
     public static int findNearestPointInBaseCommRange(NearRVPoint origPoint, List<CommLink> connectionsToBase, RealAgent ag) {
-        int pathsCalculated = 0;
         // only calculate nearest base point for connectedPoint if we haven't already.
-        if (origPoint.distanceToParent == Double.MAX_VALUE) {
-            PriorityQueue<NearRVPoint> lineOfSightBasePoints = new PriorityQueue<NearRVPoint>();
-            PriorityQueue<NearRVPoint> nonLOSBasePoints = new PriorityQueue<NearRVPoint>();
-            for(CommLink baseLink: connectionsToBase) {
-                NearRVPoint basePoint = new NearRVPoint(baseLink.getRemotePoint().x, baseLink.getRemotePoint().y);
-                double approxPathLen = basePoint.distance(origPoint);
-                basePoint.setDistanceToFrontier(approxPathLen);
-                if (baseLink.numObstacles == 0)
-                    lineOfSightBasePoints.add(basePoint);
-                else
-                    nonLOSBasePoints.add(basePoint);
+        if (origPoint.distanceToParent != Double.MAX_VALUE)
+            return 0;
+        if (Constants.USE_BASE_RANGE_DISTANCE_FIELD) {
+            // one sweep from all points in comm range of base per connectionsToBase, then a lookup per origPoint
+            int pathsCalculated = ag.hasBaseRangeField(connectionsToBase) ? 0 : 1;
+            DistanceField field = ag.getBaseRangeField(connectionsToBase);
+            int source = field.getSource(origPoint.x, origPoint.y);
+            if (source >= 0) {
+                NearRVPoint basePoint = new NearRVPoint(connectionsToBase.get(source).getRemotePoint().x, 
+                        connectionsToBase.get(source).getRemotePoint().y);
+                basePoint.setDistanceToFrontier(basePoint.distance(origPoint));
+                origPoint.distanceToParent = field.getDistance(origPoint.x, origPoint.y);
+                origPoint.parentPoint = basePoint;
+                return pathsCalculated;
             }
+            // origPoint is not in known free space, fall back to planning paths to the nearest base points
+        }
+        return findNearestPointInBaseCommRangeByPaths(origPoint, connectionsToBase, ag);
+    }
+    
+    private static int findNearestPointInBaseCommRangeByPaths(NearRVPoint origPoint, List<CommLink> connectionsToBase, 
+            RealAgent ag) {
+        int pathsCalculated = 0;
+        PriorityQueue<NearRVPoint> lineOfSightBasePoints = new PriorityQueue<NearRVPoint>();
+        PriorityQueue<NearRVPoint> nonLOSBasePoints = new PriorityQueue<NearRVPoint>();
+        for(CommLink baseLink: connectionsToBase) {
+            NearRVPoint basePoint = new NearRVPoint(baseLink.getRemotePoint().x, baseLink.getRemotePoint().y);
+            double approxPathLen = basePoint.distance(origPoint);
+            basePoint.setDistanceToFrontier(approxPathLen);
+            if (baseLink.numObstacles == 0)
+                lineOfSightBasePoints.add(basePoint);
+            else
+                nonLOSBasePoints.add(basePoint);
+        }
 
-            LinkedList<NearRVPoint> pointsConnectedToBase = new LinkedList<NearRVPoint>();
+        LinkedList<NearRVPoint> pointsConnectedToBase = new LinkedList<NearRVPoint>();
 
-            for (int j = 0; (j < 5) && !lineOfSightBasePoints.isEmpty(); j++) {
-                pointsConnectedToBase.add(lineOfSightBasePoints.poll());
-            }
+        for (int j = 0; (j < 5) && !lineOfSightBasePoints.isEmpty(); j++) {
+            pointsConnectedToBase.add(lineOfSightBasePoints.poll());
+        }
 
-            for (int j = 0; (j < 20) && !nonLOSBasePoints.isEmpty(); j++) {
-                pointsConnectedToBase.add(nonLOSBasePoints.poll());
-            }
+        for (int j = 0; (j < 20) && !nonLOSBasePoints.isEmpty(); j++) {
+            pointsConnectedToBase.add(nonLOSBasePoints.poll());
+        }
 
-            for(NearRVPoint basePoint: pointsConnectedToBase) {
-                pathsCalculated++;
-                Path pathToBase = ag.calculatePath(origPoint, basePoint);
-                double pathLen = Double.MAX_VALUE;
-                if (pathToBase.found)
-                    pathLen = pathToBase.getLength();
-                if (pathLen < origPoint.distanceToParent) {
-                    origPoint.distanceToParent = pathLen;
-                    origPoint.parentPoint = basePoint;
-                }
+        for(NearRVPoint basePoint: pointsConnectedToBase) {
+            pathsCalculated++;
+            Path pathToBase = ag.calculatePath(origPoint, basePoint);
+            double pathLen = Double.MAX_VALUE;
+            if (pathToBase.found)
+                pathLen = pathToBase.getLength();
+            if (pathLen < origPoint.distanceToParent) {
+                origPoint.distanceToParent = pathLen;
+                origPoint.parentPoint = basePoint;
             }
         }
         return pathsCalculated;
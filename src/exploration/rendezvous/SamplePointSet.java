@@ -0,0 +1,353 @@
+/*
+ *     Copyright 2010, 2015 Julian de Hoog (julian@dehoog.ca), Victor Spirin (victor.spirin@cs.ox.ac.uk)
+ *
+ *     This file is part of MRESim 2.2, a simulator for testing the behaviour
+ *     of multiple robots exploring unknown environments.
+ *
+ *     If you use MRESim, I would appreciate an acknowledgement and/or a citation
+ *     of our papers:
+ *
+ *     @inproceedings{deHoog2009,
+ *         title = "Role-Based Autonomous Multi-Robot Exploration",
+ *         author = "Julian de Hoog, Stephen Cameron and Arnoud Visser",
+ *         year = "2009",
+ *         booktitle = "International Conference on Advanced Cognitive Technologies and Applications (COGNITIVE)",
+ *         location = "Athens, Greece",
+ *         month = "November",
+ *     }
+ *
+ *     @incollection{spirin2015mresim,
+ *       title={MRESim, a Multi-robot Exploration Simulator for the Rescue Simulation League},
+ *       author={Spirin, Victor and de Hoog, Julian and Visser, Arnoud and Cameron, Stephen},
+ *       booktitle={RoboCup 2014: Robot World Cup XVIII},
+ *       pages={106--117},
+ *       year={2015},
+ *       publisher={Springer}
+ *     }
+ *
+ *     MRESim is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     MRESim is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along with MRESim.
+ *     If not, see <http://www.gnu.org/licenses/>.
+ */
+package exploration.rendezvous;
+
+import agents.RealAgent;
+import communication.CommLink;
+import communication.PropModel1;
+import communication.SpatialIndex;
+import config.Constants;
+import environment.OccupancyGrid;
+import exploration.NearRVPoint;
+import exploration.WorkerPool;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.TreeMap;
+import org.apache.commons.math3.random.SobolSequenceGenerator;
+
+/**
+ * Sobol sample points of an agent's free space, kept between rendezvous calculations together with
+ * the comm links between them. The points are the same as those of generateSobolPoints (the first
+ * free cells / density Sobol draws that land in free space), but on each update only new points and
+ * pairs whose line of cells changed in the occupancy grid have their links recomputed.
+ * Points dropped from the set (e.g. now obstacles) lose their links.
+ * 
+ * @author Victor
+ */
+public class SamplePointSet {
+    private OccupancyGrid grid;         // grid the set was built for
+    private double commRange;
+    private int gridStamp;              // grid change stamp links are up to date with
+    
+    private SobolSequenceGenerator sobolGen;
+    // every Sobol draw so far, as cells
+    private int[] drawX;
+    private int[] drawY;
+    private int numDraws;
+    // point of each draw that is currently in the set, or null
+    private NearRVPoint[] drawPoint;
+    // links from the point of each draw, by draw index of the remote point (includes the self link)
+    private ArrayList<TreeMap<Integer, CommLink>> drawLinks;
+    private final IdentityHashMap<NearRVPoint, Integer> drawIndex = new IdentityHashMap<NearRVPoint, Integer>();
+    
+    public SamplePointSet() {
+        reset(null, 0);
+    }
+    
+    private void reset(OccupancyGrid grid, double commRange) {
+        this.grid = grid;
+        this.commRange = commRange;
+        gridStamp = (grid == null) ? 0 : grid.getChangeStamp();
+        sobolGen = new SobolSequenceGenerator(2);
+        drawX = new int[256];
+        drawY = new int[256];
+        drawPoint = new NearRVPoint[256];
+        drawLinks = new ArrayList<TreeMap<Integer, CommLink>>();
+        numDraws = 0;
+        drawIndex.clear();
+    }
+    
+    private void draw() {
+        if (numDraws == drawX.length) {
+            int[] newX = new int[numDraws * 2];
+            int[] newY = new int[numDraws * 2];
+            NearRVPoint[] newPoint = new NearRVPoint[numDraws * 2];
+            System.arraycopy(drawX, 0, newX, 0, numDraws);
+            System.arraycopy(drawY, 0, newY, 0, numDraws);
+            System.arraycopy(drawPoint, 0, newPoint, 0, numDraws);
+            drawX = newX;
+            drawY = newY;
+            drawPoint = newPoint;
+        }
+        double[] vector = sobolGen.nextVector();
+        drawX[numDraws] = (int)(vector[0] * grid.width);
+        drawY[numDraws] = (int)(vector[1] * grid.height);
+        drawLinks.add(null);
+        numDraws++;
+    }
+    
+    // Brings the set and its links up to date with the agent's occupancy grid
+    public void update(RealAgent ag, double density) {
+        OccupancyGrid newGrid = ag.getOccupancyGrid();
+        if (newGrid != grid || ag.getCommRange() != commRange)
+            reset(newGrid, ag.getCommRange());
+        int newStamp = grid.getChangeStamp();
+        
+        int numPointsToGenerate = (int)(grid.getNumFreeCells() / density);
+        System.out.println("Generating " + numPointsToGenerate + " Sobol points");
+        
+        boolean[] wanted = new boolean[numDraws];
+        int accepted = 0;
+        for (int k = 0; accepted < numPointsToGenerate; k++) {
+            if (k == numDraws) {
+                draw();
+                if (wanted.length < drawX.length) {
+                    boolean[] newWanted = new boolean[drawX.length];
+                    System.arraycopy(wanted, 0, newWanted, 0, wanted.length);
+                    wanted = newWanted;
+                }
+            }
+            if (grid.freeSpaceAt(drawX[k], drawY[k])) {
+                wanted[k] = true;
+                accepted++;
+            }
+        }
+        
+        //drop points that are no longer wanted, add new ones
+        ArrayList<NearRVPoint> points = new ArrayList<NearRVPoint>();
+        ArrayList<Integer> draws = new ArrayList<Integer>();
+        boolean[] isNew = new boolean[numDraws];
+        int pointsAdded = 0;
+        int pointsRemoved = 0;
+        for (int d = 0; d < numDraws; d++) {
+            boolean inSet = (drawPoint[d] != null);
+            boolean keep = (d < wanted.length) && wanted[d];
+            if (inSet && !keep) {
+                for (Integer remote : drawLinks.get(d).keySet())
+                    if (remote != d)
+                        drawLinks.get(remote).remove(d);
+                drawLinks.set(d, null);
+                drawIndex.remove(drawPoint[d]);
+                drawPoint[d] = null;
+                pointsRemoved++;
+            } else if (!inSet && keep) {
+                NearRVPoint p = new NearRVPoint(drawX[d], drawY[d]);
+                drawPoint[d] = p;
+                drawIndex.put(p, d);
+                TreeMap<Integer, CommLink> links = new TreeMap<Integer, CommLink>();
+                links.put(d, new CommLink(p, p));
+                drawLinks.set(d, links);
+                isNew[d] = true;
+                pointsAdded++;
+            }
+            if (drawPoint[d] != null) {
+                CommLink selfLink = drawLinks.get(d).get(d);
+                selfLink.numObstacles = grid.numObstaclesOnLine(drawX[d], drawY[d], drawX[d], drawY[d]);
+                points.add(drawPoint[d]);
+                draws.add(d);
+            }
+        }
+        
+        //find pairs whose link has to be (re)computed
+        double maxRange = PropModel1.getMaxRange(commRange);
+        int[] pairs = SpatialIndex.forPoints(points, maxRange).getCandidatePairs();
+        int numChanged = 0;
+        for (int k = 0; k < pairs.length; k += 2) {
+            NearRVPoint p1 = points.get(pairs[k]);
+            NearRVPoint p2 = points.get(pairs[k+1]);
+            if (isNew[draws.get(pairs[k])] || isNew[draws.get(pairs[k+1])] ||
+                    grid.lineChangedSince(gridStamp, p1.x, p1.y, p2.x, p2.y)) {
+                pairs[numChanged++] = pairs[k];
+                pairs[numChanged++] = pairs[k+1];
+            }
+        }
+        int[] pairWalls = findLinks(points, pairs, numChanged / 2);
+        for (int k = 0; k < numChanged / 2; k++) {
+            int d1 = draws.get(pairs[2*k]);
+            int d2 = draws.get(pairs[2*k+1]);
+            if (pairWalls[k] >= 0) {
+                setLink(d1, d2, pairWalls[k]);
+                setLink(d2, d1, pairWalls[k]);
+            } else {
+                drawLinks.get(d1).remove(d2);
+                drawLinks.get(d2).remove(d1);
+            }
+        }
+        gridStamp = newStamp;
+        
+        System.out.println(Constants.INDENT + "Sample points: " + points.size() + " (" + pointsAdded + " added, " +
+                pointsRemoved + " removed), " + (numChanged / 2) + " links recomputed");
+    }
+    
+    private void setLink(int from, int to, int numObstacles) {
+        CommLink link = drawLinks.get(from).get(to);
+        if (link == null) {
+            link = new CommLink(drawPoint[from], drawPoint[to]);
+            drawLinks.get(from).put(to, link);
+        }
+        link.numObstacles = numObstacles;
+    }
+    
+    // Tests the first numPairs pairs of points in parallel, see MultiPointRendezvousStrategy.FindCommLinks.
+    // Returns number of walls for each pair, -1 if not connected.
+    private int[] findLinks(final List<NearRVPoint> points, final int[] pairs, int numPairs) {
+        final int[] pairWalls = new int[numPairs];
+        final OccupancyGrid linkGrid = grid;
+        final double maxRange = PropModel1.getMaxRange(commRange);
+        WorkerPool.parallelFor(numPairs, new WorkerPool.RangeTask() {
+            public void run(int from, int to) {
+                for (int k = from; k < to; k++) {
+                    NearRVPoint p1 = points.get(pairs[2*k]);
+                    NearRVPoint p2 = points.get(pairs[2*k+1]);
+                    pairWalls[k] = -1;
+                    if (p1.distance(p2) <= maxRange && PropModel1.isConnected(linkGrid, commRange, (Point)p1, (Point)p2))
+                        pairWalls[k] = linkGrid.numObstaclesOnLine(p1.x, p1.y, p2.x, p2.y);
+                }
+            }
+        });
+        return pairWalls;
+    }
+    
+    // Points currently in the set, in Sobol sequence order, with their per-calculation data
+    // (distances, utility, chosen links) cleared.
+    public LinkedList<NearRVPoint> getPoints() {
+        LinkedList<NearRVPoint> points = new LinkedList<NearRVPoint>();
+        for (int d = 0; d < numDraws; d++) {
+            NearRVPoint p = drawPoint[d];
+            if (p == null)
+                continue;
+            p.distanceToFrontier = 0;
+            p.distanceToParent = Double.MAX_VALUE;
+            p.utility = 0;
+            p.parentPoint = null;
+            p.commLinkClosestToBase = null;
+            p.commLinks = new LinkedList<CommLink>();
+            for (CommLink link : drawLinks.get(d).values())
+                link.utility = 0;
+            points.add(p);
+        }
+        return points;
+    }
+    
+    /**
+     * Same result as MultiPointRendezvousStrategy.FindCommLinks for a list made of getPoints() plus extra
+     * points (base, RV candidates), reusing the links between points of the set from the last update.
+     * Only links involving extra points are computed here.
+     */
+    public List<CommLink> findCommLinks(List<NearRVPoint> generatedPoints, RealAgent ag) {
+        LinkedList<CommLink> connsToBase = new LinkedList<CommLink>();
+        NearRVPoint base = new NearRVPoint(ag.getTeammate(Constants.BASE_STATION_TEAMMATE_ID).getX(), 
+                ag.getTeammate(Constants.BASE_STATION_TEAMMATE_ID).getY());
+        
+        final IdentityHashMap<NearRVPoint, Integer> position = new IdentityHashMap<NearRVPoint, Integer>();
+        ArrayList<NearRVPoint> points = new ArrayList<NearRVPoint>();
+        for (NearRVPoint p : generatedPoints)
+            if (!position.containsKey(p)) {
+                position.put(p, points.size());
+                points.add(p);
+            }
+        
+        //links between points of the set
+        for (NearRVPoint p : points) {
+            Integer d = drawIndex.get(p);
+            if (d == null)
+                continue;
+            p.commLinks = new LinkedList<CommLink>();
+            for (CommLink link : drawLinks.get(d).values())
+                if (position.containsKey(link.getRemotePoint()))
+                    p.commLinks.add(link);
+        }
+        
+        //links involving extra points, each pair tested once from the point that comes first in the list
+        ArrayList<Integer> extras = new ArrayList<Integer>();
+        for (int i = 0; i < points.size(); i++)
+            if (!drawIndex.containsKey(points.get(i)))
+                extras.add(i);
+        int numPairs = 0;
+        int[] pairs = new int[4 * extras.size() * points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            if (drawIndex.containsKey(points.get(i))) {
+                for (int e : extras)
+                    if (e > i) {
+                        pairs[2*numPairs] = i;
+                        pairs[2*numPairs+1] = e;
+                        numPairs++;
+                    }
+            } else {
+                for (int j = i; j < points.size(); j++) {
+                    pairs[2*numPairs] = i;
+                    pairs[2*numPairs+1] = j;
+                    numPairs++;
+                }
+            }
+        }
+        int[] pairWalls = findLinks(points, pairs, numPairs);
+        for (int k = 0; k < numPairs; k++) {
+            if (pairWalls[k] < 0)
+                continue;
+            NearRVPoint p1 = points.get(pairs[2*k]);
+            NearRVPoint p2 = points.get(pairs[2*k+1]);
+            CommLink link = new CommLink(p1, p2);
+            link.numObstacles = pairWalls[k];
+            p1.commLinks.add(link);
+            if (p1 != p2) {
+                link = new CommLink(p2, p1);
+                link.numObstacles = pairWalls[k];
+                p2.commLinks.add(link);
+            }
+        }
+        
+        //keep links in the order of generatedPoints, then find the connections to base
+        Comparator<CommLink> byRemotePosition = new Comparator<CommLink>() {
+            public int compare(CommLink l1, CommLink l2) {
+                Integer pos1 = position.get(l1.getRemotePoint());
+                Integer pos2 = position.get(l2.getRemotePoint());
+                return ((pos1 == null) ? Integer.MAX_VALUE : pos1) - ((pos2 == null) ? Integer.MAX_VALUE : pos2);
+            }
+        };
+        for (NearRVPoint p1 : points) {
+            Collections.sort(p1.commLinks, byRemotePosition);
+            if (p1.equals(base)) {
+                for (CommLink link : p1.commLinks) {
+                    System.out.println(Constants.INDENT + "Base is " + p1 + ", adding connected point " + link.getRemotePoint());
+                    connsToBase.add(link);
+                }
+            }
+        }
+        
+        return connsToBase;
+    }
+}
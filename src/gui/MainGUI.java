@@ -383,9 +383,15 @@ public class MainGUI extends javax.swing.JFrame {
 
 
     /**
-     * @param args the command line arguments
+     * @param args the command line arguments: --seed n repeats a run, --check-determinism prints world hashes
      */
     public static void main(String args[]) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--seed") && (i + 1 < args.length))
+                System.setProperty(SimulatorConfig.SEED_PROPERTY, args[++i]);
+            else if (args[i].equals("--check-determinism"))
+                System.setProperty(SimulatorConfig.CHECK_DETERMINISM_PROPERTY, "true");
+        }
         java.awt.EventQueue.invokeLater(new Runnable() {
             public void run() {
                 new MainGUI().setVisible(true);
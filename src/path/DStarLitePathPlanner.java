@@ -0,0 +1,370 @@
+/*
+ *     Copyright 2010, 2015 Julian de Hoog (julian@dehoog.ca), Victor Spirin (victor.spirin@cs.ox.ac.uk)
+ *
+ *     This file is part of MRESim 2.2, a simulator for testing the behaviour
+ *     of multiple robots exploring unknown environments.
+ *
+ *     If you use MRESim, I would appreciate an acknowledgement and/or a citation
+ *     of our papers:
+ *
+ *     @inproceedings{deHoog2009,
+ *         title = "Role-Based Autonomous Multi-Robot Exploration",
+ *         author = "Julian de Hoog, Stephen Cameron and Arnoud Visser",
+ *         year = "2009",
+ *         booktitle = "International Conference on Advanced Cognitive Technologies and Applications (COGNITIVE)",
+ *         location = "Athens, Greece",
+ *         month = "November",
+ *     }
+ *
+ *     @incollection{spirin2015mresim,
+ *       title={MRESim, a Multi-robot Exploration Simulator for the Rescue Simulation League},
+ *       author={Spirin, Victor and de Hoog, Julian and Visser, Arnoud and Cameron, Stephen},
+ *       booktitle={RoboCup 2014: Robot World Cup XVIII},
+ *       pages={106--117},
+ *       year={2015},
+ *       publisher={Springer}
+ *     }
+ *
+ *     MRESim is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     MRESim is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along with MRESim.
+ *     If not, see <http://www.gnu.org/licenses/>.
+ */
+package path;
+
+import environment.OccupancyGrid;
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * D* Lite path planner. The search runs backwards from the goal, so when the start moves or the
+ * occupancy grid changes, only the part of the previous solution affected by the change is repaired.
+ * The goal can be moved too (setGoal): the old goal loses its zero cost and the new one gets it, which
+ * is repaired like any other cost change. Changed cells are found from the grid's change tiles against
+ * a snapshot of passable cells. Paths stay in known free space, like those of the topological map;
+ * moves are 8-connected without corner cutting, as for grid A*.
+ * @author Victor
+ */
+public class DStarLitePathPlanner {
+    private static final double SQRT2 = Math.sqrt(2);
+    private static final double INF = Double.MAX_VALUE;
+    private static final double KEY_SCALE = 1e6;
+    
+    private final OccupancyGrid grid;
+    private final int width;
+    private final int height;
+    private int goalCell;
+    private int lastStartCell = -1;
+    private double km;                  // accumulated heuristic offset for start moves
+    private final double[] g;            // indexed x*height+y
+    private final double[] rhs;
+    private final boolean[] passable;   // passable cells as of the last replan
+    private int gridStamp;
+    
+    // open list: binary heap with lazy deletion, an entry is valid if its version is the cell's version
+    private final int[] version;
+    private final boolean[] inOpen;
+    private double[] heapK1 = new double[1024];
+    private double[] heapK2 = new double[1024];
+    private int[] heapCell = new int[1024];
+    private int[] heapVersion = new int[1024];
+    private int heapSize;
+    
+    // neighbour lists, one for the loops in findPath and computeShortestPath and one for updateVertex,
+    // which is called from those loops
+    private final int[] outerNeighbours = new int[8];
+    private final int[] innerNeighbours = new int[8];
+    
+    public DStarLitePathPlanner(OccupancyGrid grid, Point goal) {
+        this.grid = grid;
+        this.width = grid.width;
+        this.height = grid.height;
+        this.goalCell = goal.x * height + goal.y;
+        gridStamp = grid.getChangeStamp();
+        g = new double[width * height];
+        rhs = new double[width * height];
+        Arrays.fill(g, INF);
+        Arrays.fill(rhs, INF);
+        version = new int[width * height];
+        inOpen = new boolean[width * height];
+        passable = new boolean[width * height];
+        for (int x = 0; x < width; x++)
+            for (int y = 0; y < height; y++)
+                passable[x * height + y] = grid.freeSpaceAt(x, y);
+        rhs[goalCell] = 0;
+        push(goalCell);
+    }
+    
+    public Point getGoal() {
+        return new Point(goalCell / height, goalCell % height);
+    }
+    
+    public OccupancyGrid getGrid() {
+        return grid;
+    }
+    
+    /**
+     * Plans to a new goal from the next findPath on. A goal up to maxRepairedMove cells from the old
+     * one keeps the previous solution and has it repaired; beyond that the planner starts over, which
+     * is cheaper than repairing most of the grid but still needs no new arrays.
+     */
+    public void setGoal(Point goal, double maxRepairedMove) {
+        int newGoalCell = goal.x * height + goal.y;
+        if (newGoalCell == goalCell)
+            return;
+        if (getGoal().distance(goal) > maxRepairedMove) {
+            Arrays.fill(g, INF);
+            Arrays.fill(rhs, INF);
+            Arrays.fill(inOpen, false);
+            heapSize = 0;
+            km = 0;
+            lastStartCell = -1;
+            goalCell = newGoalCell;
+            rhs[goalCell] = 0;
+            push(goalCell);
+            return;
+        }
+        int oldGoalCell = goalCell;
+        goalCell = newGoalCell;
+        rhs[goalCell] = 0;
+        updateVertex(goalCell);
+        updateVertex(oldGoalCell);
+    }
+    
+    /**
+     * Plans a path from start to the goal, repairing the previous solution; the returned path has
+     * found == false if there is none.
+     */
+    public Path findPath(Point start) {
+        Path failed = new Path();
+        failed.setStartPoint(start);
+        failed.setGoalPoint(getGoal());
+        failed.found = false;
+        if (!grid.locationExists(start.x, start.y))
+            return failed;
+        int startCell = start.x * height + start.y;
+        
+        if (lastStartCell >= 0)
+            km += heuristic(lastStartCell, startCell);
+        lastStartCell = startCell;
+        for (int cell : changedCells()) {
+            updateVertex(cell);
+            int count = neighbours(cell, outerNeighbours);
+            for (int i = 0; i < count; i++)
+                updateVertex(outerNeighbours[i]);
+        }
+        if (!passable[startCell])
+            return failed;
+        computeShortestPath(startCell);
+        if (g[startCell] == INF)
+            return failed;
+        
+        LinkedList<Point> cells = new LinkedList<Point>();
+        int cur = startCell;
+        cells.add(new Point(start));
+        while (cur != goalCell) {
+            int best = -1;
+            double bestCost = INF;
+            int count = neighbours(cur, outerNeighbours);
+            for (int i = 0; i < count; i++) {
+                int n = outerNeighbours[i];
+                double c = cost(cur, n);
+                if (c < INF && g[n] < INF && c + g[n] < bestCost) {
+                    bestCost = c + g[n];
+                    best = n;
+                }
+            }
+            if ((best < 0) || (cells.size() > width * height))
+                return failed;
+            cur = best;
+            cells.add(new Point(cur / height, cur % height));
+        }
+        return new Path(cells);
+    }
+    
+    // Cells whose passability changed since the last replan; updates the snapshot
+    private LinkedList<Integer> changedCells() {
+        LinkedList<Integer> changed = new LinkedList<Integer>();
+        int newStamp = grid.getChangeStamp();
+        if (newStamp == gridStamp)
+            return changed;
+        int size = grid.getChangeTileSize();
+        for (int tx = 0; tx * size < width; tx++)
+            for (int ty = 0; ty * size < height; ty++) {
+                if (!grid.tileChangedSince(gridStamp, tx, ty))
+                    continue;
+                for (int x = tx * size; x < Math.min(width, (tx + 1) * size); x++)
+                    for (int y = ty * size; y < Math.min(height, (ty + 1) * size); y++) {
+                        boolean nowPassable = grid.freeSpaceAt(x, y);
+                        if (nowPassable != passable[x * height + y]) {
+                            passable[x * height + y] = nowPassable;
+                            changed.add(x * height + y);
+                        }
+                    }
+            }
+        gridStamp = newStamp;
+        return changed;
+    }
+    
+    private void computeShortestPath(int startCell) {
+        while (true) {
+            while (heapSize > 0 && heapVersion[0] != version[heapCell[0]])
+                pop();
+            if (heapSize == 0)
+                return;
+            int u = heapCell[0];
+            double oldK1 = heapK1[0], oldK2 = heapK2[0];
+            if (!(less(oldK1, oldK2, key1(startCell), key2(startCell)) || rhs[startCell] != g[startCell]))
+                return;
+            pop();
+            inOpen[u] = false;
+            version[u]++;
+            if (less(oldK1, oldK2, key1(u), key2(u))) {
+                push(u);
+            } else if (g[u] > rhs[u]) {
+                g[u] = rhs[u];
+                int count = neighbours(u, outerNeighbours);
+                for (int i = 0; i < count; i++)
+                    updateVertex(outerNeighbours[i]);
+            } else {
+                g[u] = INF;
+                updateVertex(u);
+                int count = neighbours(u, outerNeighbours);
+                for (int i = 0; i < count; i++)
+                    updateVertex(outerNeighbours[i]);
+            }
+        }
+    }
+    
+    private void updateVertex(int u) {
+        if (u != goalCell) {
+            double best = INF;
+            int count = neighbours(u, innerNeighbours);
+            for (int i = 0; i < count; i++) {
+                int n = innerNeighbours[i];
+                double c = cost(u, n);
+                if (c < INF && g[n] < INF && (c + g[n]) < best)
+                    best = (c + g[n]);
+            }
+            rhs[u] = best;
+        }
+        if (inOpen[u]) {
+            inOpen[u] = false;
+            version[u]++;
+        }
+        if (g[u] != rhs[u])
+            push(u);
+    }
+    
+    // Move cost between neighbouring cells, INF if the move is blocked
+    private double cost(int a, int b) {
+        if (!passable[a] || !passable[b])
+            return INF;
+        int ax = a / height, ay = a % height, bx = b / height, by = b % height;
+        if (ax != bx && ay != by)
+            return (passable[ax * height + by] && passable[bx * height + ay]) ? SQRT2 : INF;
+        return 1;
+    }
+    
+    // Fills result with the cells around cell that are on the grid and returns how many there are
+    private int neighbours(int cell, int[] result) {
+        int x = cell / height, y = cell % height;
+        int n = 0;
+        for (int dx = -1; dx <= 1; dx++)
+            for (int dy = -1; dy <= 1; dy++)
+                if ((dx != 0 || dy != 0) && x + dx >= 0 && x + dx < width && y + dy >= 0 && y + dy < height)
+                    result[n++] = (x + dx) * height + y + dy;
+        return n;
+    }
+    
+    private double heuristic(int a, int b) {
+        int dx = Math.abs(a / height - b / height), dy = Math.abs(a % height - b % height);
+        return Math.max(dx, dy) + (SQRT2 - 1) * Math.min(dx, dy);
+    }
+    
+    // Rounded so that keys that are equal but for floating point error compare as ties, which are then
+    // broken by key2; otherwise a node on a shortest path can be left inconsistent and the path
+    // followed along the g-values is not the shortest one
+    private double key1(int cell) {
+        double k = Math.min(g[cell], rhs[cell]);
+        if (k == INF)
+            return INF;
+        return Math.rint((k + heuristic(lastStartCell, cell) + km) * KEY_SCALE) / KEY_SCALE;
+    }
+    
+    private double key2(int cell) {
+        return Math.min(g[cell], rhs[cell]);
+    }
+    
+    private static boolean less(double a1, double a2, double b1, double b2) {
+        return (a1 < b1) || ((a1 == b1) && (a2 < b2));
+    }
+    
+    private void push(int cell) {
+        inOpen[cell] = true;
+        if (heapSize == heapCell.length) {
+            heapK1 = Arrays.copyOf(heapK1, heapSize * 2);
+            heapK2 = Arrays.copyOf(heapK2, heapSize * 2);
+            heapCell = Arrays.copyOf(heapCell, heapSize * 2);
+            heapVersion = Arrays.copyOf(heapVersion, heapSize * 2);
+        }
+        double k1 = (lastStartCell >= 0) ? key1(cell) : key2(cell), k2 = key2(cell);
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!less(k1, k2, heapK1[parent], heapK2[parent]))
+                break;
+            set(i, parent);
+            i = parent;
+        }
+        heapK1[i] = k1;
+        heapK2[i] = k2;
+        heapCell[i] = cell;
+        heapVersion[i] = version[cell];
+    }
+    
+    private void pop() {
+        heapSize--;
+        if (heapSize == 0)
+            return;
+        double k1 = heapK1[heapSize], k2 = heapK2[heapSize];
+        int cell = heapCell[heapSize], ver = heapVersion[heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize)
+                break;
+            if (child + 1 < heapSize && less(heapK1[child + 1], heapK2[child + 1], heapK1[child], heapK2[child]))
+                child++;
+            if (!less(heapK1[child], heapK2[child], k1, k2))
+                break;
+            set(i, child);
+            i = child;
+        }
+        heapK1[i] = k1;
+        heapK2[i] = k2;
+        heapCell[i] = cell;
+        heapVersion[i] = ver;
+    }
+    
+    private void set(int to, int from) {
+        heapK1[to] = heapK1[from];
+        heapK2[to] = heapK2[from];
+        heapCell[to] = heapCell[from];
+        heapVersion[to] = heapVersion[from];
+    }
+    
+    @Override
+    public String toString() {
+        return "[DStarLitePathPlanner] goal " + getGoal();
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ *     Copyright 2010, 2015 Julian de Hoog (julian@dehoog.ca), Victor Spirin (victor.spirin@cs.ox.ac.uk)
+ *
+ *     This file is part of MRESim 2.2, a simulator for testing the behaviour
+ *     of multiple robots exploring unknown environments.
+ *
+ *     If you use MRESim, I would appreciate an acknowledgement and/or a citation
+ *     of our papers:
+ *
+ *     @inproceedings{deHoog2009,
+ *         title = "Role-Based Autonomous Multi-Robot Exploration",
+ *         author = "Julian de Hoog, Stephen Cameron and Arnoud Visser",
+ *         year = "2009",
+ *         booktitle = "International Conference on Advanced Cognitive Technologies and Applications (COGNITIVE)",
+ *         location = "Athens, Greece",
+ *         month = "November",
+ *     }
+ *
+ *     @incollection{spirin2015mresim,
+ *       title={MRESim, a Multi-robot Exploration Simulator for the Rescue Simulation League},
+ *       author={Spirin, Victor and de Hoog, Julian and Visser, Arnoud and Cameron, Stephen},
+ *       booktitle={RoboCup 2014: Robot World Cup XVIII},
+ *       pages={106--117},
+ *       year={2015},
+ *       publisher={Springer}
+ *     }
+ *
+ *     MRESim is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     MRESim is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along with MRESim.
+ *     If not, see <http://www.gnu.org/licenses/>.
+ */
+package path;
+
+import environment.OccupancyGrid;
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Shortest path distances over the free space of an occupancy grid from a set of seed points, computed
+ * with one multi-source Dijkstra sweep. Moves are the same as for grid path planning: 8-connected
+ * through free space, diagonal steps only if both adjacent cells are free. For every reachable cell
+ * the field stores the distance to the nearest seed, which seed that is and the next cell towards it,
+ * so queries are O(1) and the path to the seed is found by following the next cells.
+ * update() repairs the field after the grid changes, only touching cells whose distance can change.
+ */
+public class DistanceField {
+    private static final double SQRT2 = Math.sqrt(2);
+    
+    private final OccupancyGrid grid;
+    private final int width;
+    private final int height;
+    private final int[] seedCells;
+    private final boolean[] free;       // free space of the grid as of the last update, indexed x*height+y
+    private final double[] dist;        // Double.MAX_VALUE if unreachable
+    private final int[] source;         // index of nearest seed, -1 if unreachable
+    private final int[] parent;         // next cell towards the nearest seed, -1 for seeds and unreachable cells
+    private int gridStamp;              // grid change stamp the field is up to date with
+    
+    // open list: binary heap of cells ordered by distance, stale entries skipped when polled
+    private int[] heapCell = new int[1024];
+    private double[] heapKey = new double[1024];
+    private int heapSize;
+    
+    // cell lists for update(), kept between updates
+    private int[] freed = new int[64];
+    private int[] blocked = new int[64];
+    private int[] stack = new int[64];
+    private int[] reset = new int[64];
+    
+    public DistanceField(OccupancyGrid grid, List<? extends Point> seeds) {
+        this.grid = grid;
+        this.width = grid.width;
+        this.height = grid.height;
+        this.gridStamp = grid.getChangeStamp();
+        free = new boolean[width * height];
+        dist = new double[width * height];
+        source = new int[width * height];
+        parent = new int[width * height];
+        Arrays.fill(dist, Double.MAX_VALUE);
+        Arrays.fill(source, -1);
+        Arrays.fill(parent, -1);
+        for (int x = 0; x < width; x++)
+            for (int y = 0; y < height; y++)
+                free[x * height + y] = grid.freeSpaceAt(x, y);
+        
+        seedCells = new int[seeds.size()];
+        int i = 0;
+        for (Point p : seeds) {
+            seedCells[i] = grid.locationExists(p.x, p.y) ? p.x * height + p.y : -1;
+            addSeed(i);
+            i++;
+        }
+        sweep();
+    }
+    
+    private void addSeed(int i) {
+        int cell = seedCells[i];
+        if (cell >= 0 && free[cell] && dist[cell] > 0) {
+            dist[cell] = 0;
+            source[cell] = i;
+            parent[cell] = -1;
+            push(cell, 0);
+        }
+    }
+    
+    // Brings the field up to date with the grid. Cells that became free are relaxed from their
+    // neighbours; cells whose path to the seed went through a cell that is no longer free (or a diagonal
+    // step that is no longer possible) are reset and relaxed again from the rest of the field.
+    public void update() {
+        int newStamp = grid.getChangeStamp();
+        if (newStamp == gridStamp)
+            return;
+        
+        int freedCount = 0;
+        int blockedCount = 0;
+        int tileSize = grid.getChangeTileSize();
+        for (int tx = 0; tx * tileSize < width; tx++)
+            for (int ty = 0; ty * tileSize < height; ty++) {
+                if (!grid.tileChangedSince(gridStamp, tx, ty))
+                    continue;
+                for (int x = tx * tileSize; x < Math.min(width, (tx + 1) * tileSize); x++)
+                    for (int y = ty * tileSize; y < Math.min(height, (ty + 1) * tileSize); y++) {
+                        int cell = x * height + y;
+                        boolean isFree = grid.freeSpaceAt(x, y);
+                        if (isFree != free[cell]) {
+                            free[cell] = isFree;
+                            if (isFree)
+                                freed = append(freed, freedCount++, cell);
+                            else
+                                blocked = append(blocked, blockedCount++, cell);
+                        }
+                    }
+            }
+        gridStamp = newStamp;
+        
+        // reset every cell whose path used a blocked cell or a diagonal step around its corner
+        int stackSize = 0;
+        for (int i = 0; i < blockedCount; i++) {
+            int cell = blocked[i];
+            stack = append(stack, stackSize++, cell);
+            int x = cell / height;
+            int y = cell % height;
+            for (int nx = Math.max(0, x - 1); nx <= Math.min(width - 1, x + 1); nx++)
+                for (int ny = Math.max(0, y - 1); ny <= Math.min(height - 1, y + 1); ny++) {
+                    int n = nx * height + ny;
+                    if (parent[n] >= 0 && !isMove(parent[n], n))
+                        stack = append(stack, stackSize++, n);
+                }
+        }
+        int resetCount = 0;
+        while (stackSize > 0) {
+            int cell = stack[--stackSize];
+            if (dist[cell] == Double.MAX_VALUE)
+                continue;
+            dist[cell] = Double.MAX_VALUE;
+            source[cell] = -1;
+            parent[cell] = -1;
+            reset = append(reset, resetCount++, cell);
+            int x = cell / height;
+            int y = cell % height;
+            for (int nx = Math.max(0, x - 1); nx <= Math.min(width - 1, x + 1); nx++)
+                for (int ny = Math.max(0, y - 1); ny <= Math.min(height - 1, y + 1); ny++)
+                    if (parent[nx * height + ny] == cell)
+                        stack = append(stack, stackSize++, nx * height + ny);
+        }
+        
+        // relax reset and freed cells (and diagonals opened by freed cells) from the cells around them
+        for (int i = 0; i < seedCells.length; i++)
+            addSeed(i);
+        for (int i = 0; i < freedCount; i++)
+            reset = append(reset, resetCount++, freed[i]);
+        for (int i = 0; i < resetCount; i++) {
+            int cell = reset[i];
+            int x = cell / height;
+            int y = cell % height;
+            for (int nx = Math.max(0, x - 1); nx <= Math.min(width - 1, x + 1); nx++)
+                for (int ny = Math.max(0, y - 1); ny <= Math.min(height - 1, y + 1); ny++) {
+                    int n = nx * height + ny;
+                    if (free[n] && dist[n] < Double.MAX_VALUE)
+                        push(n, dist[n]);
+                }
+        }
+        sweep();
+    }
+    
+    private void sweep() {
+        while (heapSize > 0) {
+            double d = heapKey[0];
+            int cell = pop();
+            if (d > dist[cell])
+                continue;
+            int x = cell / height;
+            int y = cell % height;
+            boolean left = isFree(x - 1, y);
+            boolean right = isFree(x + 1, y);
+            boolean up = isFree(x, y - 1);
+            boolean down = isFree(x, y + 1);
+            if (left) relax(cell, cell - height, d + 1);
+            if (right) relax(cell, cell + height, d + 1);
+            if (up) relax(cell, cell - 1, d + 1);
+            if (down) relax(cell, cell + 1, d + 1);
+            //no cutting corners
+            if (left && up && isFree(x - 1, y - 1)) relax(cell, cell - height - 1, d + SQRT2);
+            if (left && down && isFree(x - 1, y + 1)) relax(cell, cell - height + 1, d + SQRT2);
+            if (right && up && isFree(x + 1, y - 1)) relax(cell, cell + height - 1, d + SQRT2);
+            if (right && down && isFree(x + 1, y + 1)) relax(cell, cell + height + 1, d + SQRT2);
+        }
+    }
+    
+    private boolean isFree(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height && free[x * height + y];
+    }
+    
+    // True if a step between the two neighbouring cells is possible
+    private boolean isMove(int from, int to) {
+        int x1 = from / height, y1 = from % height;
+        int x2 = to / height, y2 = to % height;
+        if (!free[from] || !free[to])
+            return false;
+        return (x1 == x2) || (y1 == y2) || (isFree(x2, y1) && isFree(x1, y2));
+    }
+    
+    private void relax(int from, int to, double d) {
+        if (d < dist[to]) {
+            dist[to] = d;
+            source[to] = source[from];
+            parent[to] = from;
+            push(to, d);
+        }
+    }
+    
+    // Stores cell at index count of list, growing the list if it is full
+    private static int[] append(int[] list, int count, int cell) {
+        if (count == list.length)
+            list = Arrays.copyOf(list, count * 2);
+        list[count] = cell;
+        return list;
+    }
+    
+    private void push(int cell, double key) {
+        if (heapSize == heapCell.length) {
+            heapCell = Arrays.copyOf(heapCell, heapSize * 2);
+            heapKey = Arrays.copyOf(heapKey, heapSize * 2);
+        }
+        int i = heapSize++;
+        while (i > 0 && heapKey[(i - 1) / 2] > key) {
+            heapCell[i] = heapCell[(i - 1) / 2];
+            heapKey[i] = heapKey[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heapCell[i] = cell;
+        heapKey[i] = key;
+    }
+    
+    private int pop() {
+        int top = heapCell[0];
+        heapSize--;
+        int cell = heapCell[heapSize];
+        double key = heapKey[heapSize];
+        int i = 0;
+        while (2 * i + 1 < heapSize) {
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && heapKey[child + 1] < heapKey[child])
+                child++;
+            if (heapKey[child] >= key)
+                break;
+            heapCell[i] = heapCell[child];
+            heapKey[i] = heapKey[child];
+            i = child;
+        }
+        heapCell[i] = cell;
+        heapKey[i] = key;
+        return top;
+    }
+    
+    // Path length from (x, y) to the nearest seed, Double.MAX_VALUE if there is none
+    public double getDistance(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            return Double.MAX_VALUE;
+        return dist[x * height + y];
+    }
+    
+    // Index (in the list given to the constructor) of the seed nearest to (x, y), -1 if none is reachable
+    public int getSource(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            return -1;
+        return source[x * height + y];
+    }
+    
+    // Cell by cell path from start to its nearest seed; path.found is false if no seed is reachable
+    public Path getPathToSource(Point start) {
+        if (getSource(start.x, start.y) < 0) {
+            Path path = new Path();
+            path.setStartPoint(start);
+            return path;
+        }
+        LinkedList<Point> cells = new LinkedList<Point>();
+        for (int cell = start.x * height + start.y; cell >= 0; cell = parent[cell])
+            cells.add(new Point(cell / height, cell % height));
+        return new Path(cells);
+    }
+    
+    public OccupancyGrid getGrid() {
+        return grid;
+    }
+    
+    // True if the grid has not changed since the field was computed or last updated
+    public boolean isUpToDate(OccupancyGrid grid) {
+        return grid == this.grid && grid.getChangeStamp() == gridStamp;
+    }
+    
+    @Override
+    public String toString() {
+        return("[DistanceField] ");
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ *     Copyright 2010, 2015 Julian de Hoog (julian@dehoog.ca), Victor Spirin (victor.spirin@cs.ox.ac.uk)
+ *
+ *     This file is part of MRESim 2.2, a simulator for testing the behaviour
+ *     of multiple robots exploring unknown environments.
+ *
+ *     If you use MRESim, I would appreciate an acknowledgement and/or a citation
+ *     of our papers:
+ *
+ *     @inproceedings{deHoog2009,
+ *         title = "Role-Based Autonomous Multi-Robot Exploration",
+ *         author = "Julian de Hoog, Stephen Cameron and Arnoud Visser",
+ *         year = "2009",
+ *         booktitle = "International Conference on Advanced Cognitive Technologies and Applications (COGNITIVE)",
+ *         location = "Athens, Greece",
+ *         month = "November",
+ *     }
+ *
+ *     @incollection{spirin2015mresim,
+ *       title={MRESim, a Multi-robot Exploration Simulator for the Rescue Simulation League},
+ *       author={Spirin, Victor and de Hoog, Julian and Visser, Arnoud and Cameron, Stephen},
+ *       booktitle={RoboCup 2014: Robot World Cup XVIII},
+ *       pages={106--117},
+ *       year={2015},
+ *       publisher={Springer}
+ *     }
+ *
+ *     MRESim is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     MRESim is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along with MRESim.
+ *     If not, see <http://www.gnu.org/licenses/>.
+ */
+package path;
+
+import environment.OccupancyGrid;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.PriorityQueue;
+
+/**
+ * Hierarchical path planning (HPA*) over fixed-size clusters of the occupancy grid. The clusters are
+ * the grid's change tiles. Each cluster keeps entrance cells on its borders, one in the middle of
+ * every passable stretch of a border (or one at each end for long stretches). It also keeps the
+ * distances between its entrances inside the cluster. A query connects start and goal to the
+ * entrances of their clusters, runs A* over the entrances and then refines each step of the abstract
+ * path with a search inside one cluster. Moves and passable cells are the same as for grid A*:
+ * 8-connected, no corner cutting, through any cell that is not an obstacle.
+ * Only clusters whose tile changed since the last query, and their neighbours, are rebuilt.
+ * @author Victor
+ */
+public class HierarchicalPathPlanner {
+    private static final double SQRT2 = Math.sqrt(2);
+    // Border stretches at least this long get an entrance at each end instead of one in the middle
+    private static final int LONG_ENTRANCE = 6;
+    // cameFrom marker for a goal reached by the direct search between nearby clusters
+    private static final int NEAR_PATH = -2;
+    // Open list entries are {cost, cell}
+    private static final Comparator<double[]> BY_COST = new Comparator<double[]>() {
+        public int compare(double[] a, double[] b) {
+            return Double.compare(a[0], b[0]);
+        }
+    };
+    
+    private final OccupancyGrid grid;
+    private final int size;             // cluster side in cells
+    private final int clustersX;
+    private final int clustersY;
+    private final Cluster[] clusters;   // indexed cx*clustersY+cy
+    private int gridStamp;
+    
+    private static class Cluster {
+        int[] cells = new int[0];       // entrance cells, indexed x*height+y; a cell may appear once per border
+        int[] partners = new int[0];    // the cell across the border from each entrance
+        double[][] dist;                // distances between entrances inside the cluster
+    }
+    
+    public HierarchicalPathPlanner(OccupancyGrid grid) {
+        this.grid = grid;
+        this.size = grid.getChangeTileSize();
+        this.clustersX = (grid.width + size - 1) / size;
+        this.clustersY = (grid.height + size - 1) / size;
+        clusters = new Cluster[clustersX * clustersY];
+        for (int i = 0; i < clusters.length; i++)
+            clusters[i] = new Cluster();
+        gridStamp = grid.getChangeStamp();
+        boolean[] all = new boolean[clusters.length];
+        Arrays.fill(all, true);
+        rebuild(all);
+    }
+    
+    public OccupancyGrid getGrid() {
+        return grid;
+    }
+    
+    // Rebuilds the clusters touched by grid changes since the last query
+    private void update() {
+        int newStamp = grid.getChangeStamp();
+        if (newStamp == gridStamp)
+            return;
+        boolean[] dirty = new boolean[clusters.length];
+        boolean any = false;
+        for (int cx = 0; cx < clustersX; cx++)
+            for (int cy = 0; cy < clustersY; cy++)
+                if (grid.tileChangedSince(gridStamp, cx, cy)) {
+                    // entrances on shared borders change on both sides
+                    dirty[cx * clustersY + cy] = true;
+                    if (cx > 0) dirty[(cx - 1) * clustersY + cy] = true;
+                    if (cx < clustersX - 1) dirty[(cx + 1) * clustersY + cy] = true;
+                    if (cy > 0) dirty[cx * clustersY + cy - 1] = true;
+                    if (cy < clustersY - 1) dirty[cx * clustersY + cy + 1] = true;
+                    any = true;
+                }
+        gridStamp = newStamp;
+        if (any)
+            rebuild(dirty);
+    }
+    
+    private void rebuild(boolean[] dirty) {
+        for (int cx = 0; cx < clustersX; cx++)
+            for (int cy = 0; cy < clustersY; cy++) {
+                if (!dirty[cx * clustersY + cy])
+                    continue;
+                Cluster c = clusters[cx * clustersY + cy];
+                ArrayList<Integer> entrances = new ArrayList<Integer>();
+                int x0 = cx * size, y0 = cy * size;
+                int x1 = Math.min(x0 + size, grid.width) - 1, y1 = Math.min(y0 + size, grid.height) - 1;
+                if (cx > 0)
+                    addEntrances(entrances, x0, y0, 0, 1, y1 - y0 + 1, -1, 0);
+                if (cx < clustersX - 1)
+                    addEntrances(entrances, x1, y0, 0, 1, y1 - y0 + 1, 1, 0);
+                if (cy > 0)
+                    addEntrances(entrances, x0, y0, 1, 0, x1 - x0 + 1, 0, -1);
+                if (cy < clustersY - 1)
+                    addEntrances(entrances, x0, y1, 1, 0, x1 - x0 + 1, 0, 1);
+                c.cells = new int[entrances.size() / 2];
+                c.partners = new int[entrances.size() / 2];
+                for (int i = 0; i < c.cells.length; i++) {
+                    c.cells[i] = entrances.get(2 * i);
+                    c.partners[i] = entrances.get(2 * i + 1);
+                }
+                c.dist = new double[c.cells.length][];
+                for (int i = 0; i < c.cells.length; i++) {
+                    Rectangle window = window(cx * clustersY + cy);
+                    double[] local = search(window, c.cells[i], -1, null);
+                    c.dist[i] = new double[c.cells.length];
+                    for (int j = 0; j < c.cells.length; j++)
+                        c.dist[i][j] = local[toLocal(window, c.cells[j])];
+                }
+            }
+    }
+    
+    // Adds (cell, partner) pairs for the passable stretches of one border. The border runs from (x, y)
+    // in steps of (stepX, stepY) for length cells; partners are at offset (dx, dy) across the border.
+    private void addEntrances(ArrayList<Integer> entrances, int x, int y, int stepX, int stepY, int length, 
+            int dx, int dy) {
+        int runStart = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean open = (i < length) && passable(x + i * stepX, y + i * stepY) 
+                    && passable(x + i * stepX + dx, y + i * stepY + dy);
+            if (open && runStart < 0)
+                runStart = i;
+            else if (!open && runStart >= 0) {
+                int runEnd = i - 1;
+                if (runEnd - runStart + 1 >= LONG_ENTRANCE) {
+                    addEntrance(entrances, x + runStart * stepX, y + runStart * stepY, dx, dy);
+                    addEntrance(entrances, x + runEnd * stepX, y + runEnd * stepY, dx, dy);
+                } else {
+                    int mid = (runStart + runEnd) / 2;
+                    addEntrance(entrances, x + mid * stepX, y + mid * stepY, dx, dy);
+                }
+                runStart = -1;
+            }
+        }
+    }
+    
+    private void addEntrance(ArrayList<Integer> entrances, int x, int y, int dx, int dy) {
+        entrances.add(x * grid.height + y);
+        entrances.add((x + dx) * grid.height + y + dy);
+    }
+    
+    private boolean passable(int x, int y) {
+        return grid.locationExists(x, y) && !grid.obstacleAt(x, y);
+    }
+    
+    private int clusterOf(int cell) {
+        return (cell / grid.height / size) * clustersY + (cell % grid.height) / size;
+    }
+    
+    private Rectangle window(int cluster) {
+        int x0 = (cluster / clustersY) * size, y0 = (cluster % clustersY) * size;
+        return new Rectangle(x0, y0, Math.min(size, grid.width - x0), Math.min(size, grid.height - y0));
+    }
+    
+    private int toLocal(Rectangle window, int cell) {
+        return (cell / grid.height - window.x) * window.height + (cell % grid.height - window.y);
+    }
+    
+    /**
+     * Dijkstra inside a window of the grid from the given cell; returns distances indexed by local cell
+     * (Double.MAX_VALUE if unreachable). Stops early once goal is settled if goal is not -1, and
+     * fills parent (local indices, -1 for none) if it is not null.
+     */
+    private double[] search(Rectangle window, int startCell, int goalCell, int[] parent) {
+        int w = window.width, h = window.height;
+        double[] dist = new double[w * h];
+        Arrays.fill(dist, Double.MAX_VALUE);
+        if (parent != null)
+            Arrays.fill(parent, -1);
+        boolean[] settled = new boolean[w * h];
+        PriorityQueue<double[]> open = new PriorityQueue<double[]>(16, BY_COST);
+        int start = toLocal(window, startCell);
+        int goal = (goalCell >= 0) ? toLocal(window, goalCell) : -1;
+        dist[start] = 0;
+        open.add(new double[] {0, start});
+        while (!open.isEmpty()) {
+            int cur = (int)open.poll()[1];
+            if (settled[cur])
+                continue;
+            settled[cur] = true;
+            if (cur == goal)
+                break;
+            int x = window.x + cur / h, y = window.y + cur % h;
+            for (int dx = -1; dx <= 1; dx++)
+                for (int dy = -1; dy <= 1; dy++) {
+                    if (dx == 0 && dy == 0)
+                        continue;
+                    if (!window.contains(x + dx, y + dy) || !passable(x + dx, y + dy))
+                        continue;
+                    if (dx != 0 && dy != 0 && (!passable(x + dx, y) || !passable(x, y + dy)))
+                        continue;
+                    int next = cur + dx * h + dy;
+                    double d = dist[cur] + ((dx != 0 && dy != 0) ? SQRT2 : 1);
+                    if (d < dist[next]) {
+                        dist[next] = d;
+                        if (parent != null)
+                            parent[next] = cur;
+                        open.add(new double[] {d, next});
+                    }
+                }
+        }
+        return dist;
+    }
+    
+    // Cells from startCell to goalCell inside a window, appended to cells (startCell excluded)
+    private boolean refine(Rectangle window, int startCell, int goalCell, LinkedList<Point> cells) {
+        if (startCell == goalCell)
+            return true;
+        int[] parent = new int[window.width * window.height];
+        double[] dist = search(window, startCell, goalCell, parent);
+        int goal = toLocal(window, goalCell);
+        if (dist[goal] == Double.MAX_VALUE)
+            return false;
+        LinkedList<Point> segment = new LinkedList<Point>();
+        for (int cur = goal; cur != toLocal(window, startCell); cur = parent[cur])
+            segment.addFirst(new Point(window.x + cur / window.height, window.y + cur % window.height));
+        cells.addAll(segment);
+        return true;
+    }
+    
+    private double heuristic(int cell, Point goal) {
+        int dx = Math.abs(cell / grid.height - goal.x), dy = Math.abs(cell % grid.height - goal.y);
+        return Math.max(dx, dy) + (SQRT2 - 1) * Math.min(dx, dy);
+    }
+    
+    /**
+     * Plans a path from start to goal; the returned path has found == false if there is none.
+     */
+    public Path findPath(Point start, Point goal) {
+        update();
+        Path failed = new Path();
+        failed.setStartPoint(start);
+        failed.setGoalPoint(goal);
+        failed.found = false;
+        if (!passable(start.x, start.y) || !passable(goal.x, goal.y))
+            return failed;
+        int startCell = start.x * grid.height + start.y;
+        int goalCell = goal.x * grid.height + goal.y;
+        if (startCell == goalCell) {
+            LinkedList<Point> single = new LinkedList<Point>();
+            single.add(new Point(start));
+            return new Path(single);
+        }
+        
+        int startCluster = clusterOf(startCell), goalCluster = clusterOf(goalCell);
+        Rectangle startWindow = window(startCluster), goalWindow = window(goalCluster);
+        double[] fromStart = search(startWindow, startCell, -1, null);
+        double[] toGoal = search(goalWindow, goalCell, -1, null);
+        
+        // A* over entrance cells; -1 stands for the goal itself
+        HashMap<Integer, Double> g = new HashMap<Integer, Double>();
+        HashMap<Integer, Integer> cameFrom = new HashMap<Integer, Integer>();
+        PriorityQueue<double[]> open = new PriorityQueue<double[]>(64, BY_COST);
+        // Nearby goals are also searched for directly, in the clusters around both ends, as going
+        // through entrances can be a long detour for short paths
+        Rectangle nearWindow = null;
+        if (Math.abs(startCluster / clustersY - goalCluster / clustersY) <= 1 
+                && Math.abs(startCluster % clustersY - goalCluster % clustersY) <= 1) {
+            nearWindow = startWindow.union(goalWindow);
+            nearWindow.grow(size, size);
+            nearWindow = nearWindow.intersection(new Rectangle(0, 0, grid.width, grid.height));
+            double d = search(nearWindow, startCell, goalCell, null)[toLocal(nearWindow, goalCell)];
+            if (d < Double.MAX_VALUE) {
+                g.put(-1, d);
+                cameFrom.put(-1, NEAR_PATH);
+                open.add(new double[] {d, -1});
+            }
+        }
+        Cluster sc = clusters[startCluster];
+        for (int i = 0; i < sc.cells.length; i++) {
+            double d = fromStart[toLocal(startWindow, sc.cells[i])];
+            if (d < Double.MAX_VALUE && (!g.containsKey(sc.cells[i]) || d < g.get(sc.cells[i]))) {
+                g.put(sc.cells[i], d);
+                cameFrom.put(sc.cells[i], startCell);
+                open.add(new double[] {d + heuristic(sc.cells[i], goal), sc.cells[i]});
+            }
+        }
+        HashMap<Integer, Boolean> closed = new HashMap<Integer, Boolean>();
+        boolean reached = false;
+        while (!open.isEmpty()) {
+            int cur = (int)open.poll()[1];
+            if (closed.containsKey(cur))
+                continue;
+            closed.put(cur, true);
+            if (cur == -1) {
+                reached = true;
+                break;
+            }
+            double gCur = g.get(cur);
+            int cluster = clusterOf(cur);
+            Cluster c = clusters[cluster];
+            if (cluster == goalCluster) {
+                double d = toGoal[toLocal(goalWindow, cur)];
+                if (d < Double.MAX_VALUE)
+                    relax(g, cameFrom, open, cur, -1, gCur + d, goal);
+            }
+            for (int i = 0; i < c.cells.length; i++) {
+                if (c.cells[i] != cur)
+                    continue;
+                relax(g, cameFrom, open, cur, c.partners[i], gCur + 1, goal);
+                for (int j = 0; j < c.cells.length; j++)
+                    if (c.dist[i][j] < Double.MAX_VALUE && c.cells[j] != cur)
+                        relax(g, cameFrom, open, cur, c.cells[j], gCur + c.dist[i][j], goal);
+            }
+        }
+        if (!reached)
+            return failed;
+        
+        LinkedList<Point> cells = new LinkedList<Point>();
+        cells.add(new Point(start));
+        if (cameFrom.get(-1) == NEAR_PATH) {
+            refine(nearWindow, startCell, goalCell, cells);
+            return new Path(cells);
+        }
+        
+        // Refine the abstract path cluster by cluster
+        LinkedList<Integer> abstractPath = new LinkedList<Integer>();
+        abstractPath.add(goalCell);
+        for (int cur = cameFrom.get(-1); cur != startCell; cur = cameFrom.get(cur))
+            abstractPath.addFirst(cur);
+        abstractPath.addFirst(startCell);
+        int prev = -1;
+        for (int cell : abstractPath) {
+            if (prev >= 0) {
+                if (clusterOf(prev) != clusterOf(cell))
+                    cells.add(new Point(cell / grid.height, cell % grid.height));
+                else if (!refine(window(clusterOf(cell)), prev, cell, cells))
+                    return failed;
+            }
+            prev = cell;
+        }
+        return new Path(cells);
+    }
+    
+    private void relax(HashMap<Integer, Double> g, HashMap<Integer, Integer> cameFrom, PriorityQueue<double[]> open,
+            int from, int to, double cost, Point goal) {
+        if (g.containsKey(to) && g.get(to) <= cost)
+            return;
+        g.put(to, cost);
+        cameFrom.put(to, from);
+        open.add(new double[] {cost + ((to == -1) ? 0 : heuristic(to, goal)), to});
+    }
+    
+    @Override
+    public String toString() {
+        return "[HierarchicalPathPlanner] " + clusters.length + " clusters";
+    }
+}
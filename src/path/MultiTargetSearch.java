@@ -0,0 +1,233 @@
+/*
+ *     Copyright 2010, 2015 Julian de Hoog (julian@dehoog.ca), Victor Spirin (victor.spirin@cs.ox.ac.uk)
+ *
+ *     This file is part of MRESim 2.2, a simulator for testing the behaviour
+ *     of multiple robots exploring unknown environments.
+ *
+ *     If you use MRESim, I would appreciate an acknowledgement and/or a citation
+ *     of our papers:
+ *
+ *     @inproceedings{deHoog2009,
+ *         title = "Role-Based Autonomous Multi-Robot Exploration",
+ *         author = "Julian de Hoog, Stephen Cameron and Arnoud Visser",
+ *         year = "2009",
+ *         booktitle = "International Conference on Advanced Cognitive Technologies and Applications (COGNITIVE)",
+ *         location = "Athens, Greece",
+ *         month = "November",
+ *     }
+ *
+ *     @incollection{spirin2015mresim,
+ *       title={MRESim, a Multi-robot Exploration Simulator for the Rescue Simulation League},
+ *       author={Spirin, Victor and de Hoog, Julian and Visser, Arnoud and Cameron, Stephen},
+ *       booktitle={RoboCup 2014: Robot World Cup XVIII},
+ *       pages={106--117},
+ *       year={2015},
+ *       publisher={Springer}
+ *     }
+ *
+ *     MRESim is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     MRESim is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along with MRESim.
+ *     If not, see <http://www.gnu.org/licenses/>.
+ */
+package path;
+
+import environment.OccupancyGrid;
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Shortest grid paths from one start to a set of targets, found with a single Dijkstra sweep that stops
+ * once every target is settled. Moves are those of grid A* (Path.getAStarPath): 8-connected through any
+ * cell that is not an obstacle, so paths may cross unknown space, diagonal steps only if both adjacent
+ * cells are passable. The sweep also stops once it is maxDetour times farther than the farthest target
+ * still left in a straight line, so an unreachable target does not make it cover the whole map.
+ * Work is bounded by the cells reached: an instance keeps its arrays across searches and a cell's
+ * entries are only valid if its stamp is that of the current search. The arrays take about 20 bytes
+ * per grid cell, so instances are meant to be kept by their owner (see RealAgent.takeTargetSearch)
+ * and used by one thread at a time.
+ * @author Victor
+ */
+public class MultiTargetSearch {
+    private static final double SQRT2 = Math.sqrt(2);
+    
+    private int[] stamp = new int[0];       // search that last touched the cell, indexed x*height+y
+    private int[] targetStamp = new int[0]; // search the cell is a target of
+    private double[] dist = new double[0];
+    private int[] parent = new int[0];      // previous cell on the path from the start, -1 for the start
+    private int currentStamp;
+    
+    private int[] heapCell = new int[1024];
+    private double[] heapKey = new double[1024];
+    private int heapSize;
+    
+    private OccupancyGrid grid;
+    private int width;
+    private int height;
+    
+    // Cell by cell paths from start to every target reached, keyed by target cell
+    public HashMap<Point, LinkedList<Point>> findPaths(OccupancyGrid grid, Point start, 
+            List<? extends Point> targets, double maxDetour) {
+        this.grid = grid;
+        width = grid.width;
+        height = grid.height;
+        HashMap<Point, LinkedList<Point>> paths = new HashMap<Point, LinkedList<Point>>();
+        if (!isPassable(start.x, start.y))
+            return paths;
+        nextStamp();
+        
+        LinkedList<Integer> targetCells = new LinkedList<Integer>();
+        for (Point p : targets)
+            if (isPassable(p.x, p.y) && targetStamp[p.x * height + p.y] != currentStamp) {
+                targetStamp[p.x * height + p.y] = currentStamp;
+                targetCells.add(p.x * height + p.y);
+            }
+        int targetsLeft = targetCells.size();
+        double maxDistance = maxDetour * farthest(start, targetCells);
+        
+        heapSize = 0;
+        int startCell = start.x * height + start.y;
+        visit(startCell, 0, -1);
+        push(startCell, 0);
+        while ((heapSize > 0) && (targetsLeft > 0)) {
+            double d = heapKey[0];
+            int cell = pop();
+            if (d > dist[cell])
+                continue;
+            if (d > maxDistance)
+                break;
+            if (targetStamp[cell] == currentStamp) {
+                targetStamp[cell] = 0;
+                targetsLeft--;
+                paths.put(new Point(cell / height, cell % height), pathTo(cell));
+                if (targetsLeft > 0) {
+                    targetCells.remove(Integer.valueOf(cell));
+                    maxDistance = maxDetour * farthest(start, targetCells);
+                }
+            }
+            int x = cell / height;
+            int y = cell % height;
+            boolean left = isPassable(x - 1, y);
+            boolean right = isPassable(x + 1, y);
+            boolean up = isPassable(x, y - 1);
+            boolean down = isPassable(x, y + 1);
+            if (left) relax(cell, cell - height, d + 1);
+            if (right) relax(cell, cell + height, d + 1);
+            if (up) relax(cell, cell - 1, d + 1);
+            if (down) relax(cell, cell + 1, d + 1);
+            //no cutting corners
+            if (left && up && isPassable(x - 1, y - 1)) relax(cell, cell - height - 1, d + SQRT2);
+            if (left && down && isPassable(x - 1, y + 1)) relax(cell, cell - height + 1, d + SQRT2);
+            if (right && up && isPassable(x + 1, y - 1)) relax(cell, cell + height - 1, d + SQRT2);
+            if (right && down && isPassable(x + 1, y + 1)) relax(cell, cell + height + 1, d + SQRT2);
+        }
+        this.grid = null;
+        return paths;
+    }
+    
+    // Starts a new search; arrays grow to the grid size the first time they are needed
+    private void nextStamp() {
+        int size = width * height;
+        if (stamp.length < size) {
+            stamp = new int[size];
+            targetStamp = new int[size];
+            dist = new double[size];
+            parent = new int[size];
+            currentStamp = 0;
+        }
+        currentStamp++;
+        if (currentStamp == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            Arrays.fill(targetStamp, 0);
+            currentStamp = 1;
+        }
+    }
+    
+    private double farthest(Point start, List<Integer> cells) {
+        double max = 0;
+        for (int cell : cells)
+            max = Math.max(max, start.distance(cell / height, cell % height));
+        return max + 1;
+    }
+    
+    private boolean isPassable(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height && !grid.obstacleAt(x, y);
+    }
+    
+    private void visit(int cell, double d, int from) {
+        stamp[cell] = currentStamp;
+        dist[cell] = d;
+        parent[cell] = from;
+    }
+    
+    private void relax(int from, int to, double d) {
+        if ((stamp[to] != currentStamp) || (d < dist[to])) {
+            visit(to, d, from);
+            push(to, d);
+        }
+    }
+    
+    private LinkedList<Point> pathTo(int cell) {
+        LinkedList<Point> cells = new LinkedList<Point>();
+        for (; cell >= 0; cell = parent[cell])
+            cells.addFirst(new Point(cell / height, cell % height));
+        return cells;
+    }
+    
+    private void push(int cell, double key) {
+        if (heapSize == heapCell.length) {
+            heapCell = Arrays.copyOf(heapCell, heapSize * 2);
+            heapKey = Arrays.copyOf(heapKey, heapSize * 2);
+        }
+        int i = heapSize++;
+        while (i > 0 && heapKey[(i - 1) / 2] > key) {
+            heapCell[i] = heapCell[(i - 1) / 2];
+            heapKey[i] = heapKey[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heapCell[i] = cell;
+        heapKey[i] = key;
+    }
+    
+    private int pop() {
+        int top = heapCell[0];
+        heapSize--;
+        int cell = heapCell[heapSize];
+        double key = heapKey[heapSize];
+        int i = 0;
+        while (2 * i + 1 < heapSize) {
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && heapKey[child + 1] < heapKey[child])
+                child++;
+            if (heapKey[child] >= key)
+                break;
+            heapCell[i] = heapCell[child];
+            heapKey[i] = heapKey[child];
+            i = child;
+        }
+        heapCell[i] = cell;
+        heapKey[i] = key;
+        return top;
+    }
+    
+    // Path from the cells returned by findPaths
+    public static Path toPath(List<Point> cells) {
+        return new Path(new LinkedList<Point>(cells));
+    }
+    
+    @Override
+    public String toString() {
+        return("[MultiTargetSearch] ");
+    }
+}
@@ -48,6 +48,7 @@ import gui.ExplorationImage;
 import gui.ShowSettings.ShowSettingsAgent;
 import java.awt.Point;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *
@@ -59,12 +60,22 @@ public class Path {
     private Point goal;
     private OccupancyGrid grid;
         
-    List<Point> reversePathPoints;
-    List<Point> pathPoints;
+    PointList reversePathPoints;
+    PointList pathPoints;
     LinkedList<TopologicalNode> pathNodesReverse;
     LinkedList<TopologicalNode> pathNodes;
-    LinkedList<Point> allPathPixels;
+    // Pixels covered by the path are worked out when asked for, see getAllPathPixels
+    private PointList pixelPoints;
+    private Point pixelStart;
     double length;
+    // Search ran out of its expansion budget. The path stays empty, as for any failed search, and the
+    // points found so far (towards the goal, not reaching it) are kept in partialPathPoints
+    private boolean partial;
+    private PointList partialPathPoints;
+    
+    // Searches run and searches stopped by their expansion budget, over all paths
+    private static final AtomicInteger searchCount = new AtomicInteger();
+    private static final AtomicInteger budgetExhaustedCount = new AtomicInteger();
     
     private void OutputPathError(OccupancyGrid agentGrid, Point startpoint, Point endpoint, String dir)
     {
@@ -108,8 +119,18 @@ public class Path {
     }
 
     public Path() {
-            allPathPixels = new LinkedList<Point>();
-            pathPoints = new LinkedList<Point>();
+            pathPoints = new PointList();
+    }
+	
+    // Path through the given cells, in order (used by DistanceField)
+    Path(List<Point> cells) {
+        pathPoints = new PointList(cells);
+        reversePathPoints = pathPoints.reversedView();
+        pixelPoints = pathPoints.view();
+        setStartPoint(cells.get(0));
+        setGoalPoint(cells.get(cells.size() - 1));
+        found = true;
+        recalcLength();
     }
 	
     public Path(OccupancyGrid agentGrid, Point startpoint, Point endpoint, boolean limit, boolean jump) {  
@@ -164,32 +185,8 @@ public class Path {
             return;
         }
         
-        // not sure why this can happen, but consider those nodes unexplored as workaround
-        if (!startNode.equals(goalNode) && (startNode.getListOfNeighbours().size() == 0))
-        {            
-            for (int i = 0; i < areaGrid.length; i++)
-            {
-                for (int j = 0; j < areaGrid[0].length; j++)
-                {
-                   if (areaGrid[i][j] == startNode.getID())
-                       areaGrid[i][j] = Constants.UNEXPLORED_NODE_ID;
-                }
-            }
-            startNode.setID(Constants.UNEXPLORED_NODE_ID);        
-        }
-        
-        if (!startNode.equals(goalNode) && (goalNode.getListOfNeighbours().size() == 0))
-        {
-            for (int i = 0; i < areaGrid.length; i++)
-            {
-                for (int j = 0; j < areaGrid[0].length; j++)
-                {
-                   if (areaGrid[i][j] == goalNode.getID())
-                       areaGrid[i][j] = Constants.UNEXPLORED_NODE_ID;
-                }
-            }
-            goalNode.setID(Constants.UNEXPLORED_NODE_ID);
-        }
+        // nodes without neighbours are already unexplored, see TopologicalMap.generateKeyAreas; the map
+        // may be shared with other agents, so it is not changed here
         
         if ((startNode == null) || (goalNode == null) || startNode.equals(goalNode) 
                 || (startNode.getListOfNeighbours().contains(goalNode) && (goalNode.getID() != Constants.UNEXPLORED_NODE_ID))
@@ -261,31 +258,29 @@ public class Path {
                 OutputPathError(agentGrid, startpoint, endpoint, Constants.DEFAULT_PATH_LOG_DIRECTORY);
                 return;
             }
-            pathPoints = new LinkedList<Point>();
+            pathPoints = new PointList();
             if (p0 != null)
             {
-                for (Point p : p0.getPoints())
-                {
-                    pathPoints.add(p);
-                }
+                pathPoints.addAll(p0.getPoints());
                 startpoint = p0.start;
             }
-            for (Point p : p1.getPoints())
-            {
-                pathPoints.add(p);
-            }
+            pathPoints.addAll(p1.getPoints());
             if (p3 != null)
             {
-                for (Point p : p3.getPoints())
-                {
-                    pathPoints.add(p);
-                }
+                pathPoints.addAll(p3.getPoints());
                 endpoint = p3.goal;
             }
+            reversePathPoints = pathPoints.reversedView();
+            pixelStart = null;
+            pixelPoints = pathPoints.view();
             return;
         }
         
-        getAStarPath(startNode, goalNode);
+        TopologicalGraph graph = tMap.getGraph();
+        if (graph != null)
+            getAStarPath(graph, startNode, goalNode);
+        else
+            getAStarPath(startNode, goalNode);
         if (pathNodes.size() == 0) //No path found
         {
             System.out.println("Could not find topological path, startpoint is " + startpoint.toString() + 
@@ -325,14 +320,11 @@ public class Path {
             return;
         }
         
-        pathPoints = new LinkedList<Point>();
+        pathPoints = new PointList();
         int index = 0;
         if (p0 != null)
         {
-            for (Point p : p0.getPoints())
-            {
-                pathPoints.add(p);
-            }
+            pathPoints.addAll(p0.getPoints());
         }
         for (TopologicalNode n : pathNodes)
         {
@@ -341,41 +333,45 @@ public class Path {
             
             if (n.equals(startNode))
             {
-                for (Point p : p1.getPoints())
-                {
-                    pathPoints.add(p);
-                }
+                pathPoints.addAll(p1.getPoints());
             }
             
             if (!n.equals(startNode) && !n.equals(goalNode) && !pathNodes.get(index+1).equals(goalNode))
             {
-                for (Point p : n.getPathToNeighbour(pathNodes.get(index+1)).getPoints())
-                    pathPoints.add((Point)p.clone());
+                Path edge = (graph != null) ? graph.getPathToNeighbour(n, pathNodes.get(index+1)) 
+                        : n.getPathToNeighbour(pathNodes.get(index+1));
+                pathPoints.addAll(edge.getPoints());
             }
             
             if (n.equals(goalNode))
             {
-                for (Point p : p2.getPoints())
-                {
-                    pathPoints.add(p);
-                }
+                pathPoints.addAll(p2.getPoints());
             }                      
             
             index++;
         }
         if (p3 != null)
         {
-            for (Point p : p3.getPoints())
-            {
-                pathPoints.add(p);
-            }
+            pathPoints.addAll(p3.getPoints());
         }
+        reversePathPoints = pathPoints.reversedView();
+        pixelStart = null;
+        pixelPoints = pathPoints.view();
         this.recalcLength();
         
                 
         //System.out.println("Path length is " + this.getLength());
     }
     
+    // Same search as getAStarPath(startNode, goalNode), over the frozen adjacency arrays of the map
+    public void getAStarPath(TopologicalGraph graph, TopologicalNode startNode, TopologicalNode goalNode)
+    {
+        pathNodes = graph.findPath(startNode, goalNode);
+        pathNodesReverse = new LinkedList<TopologicalNode>(pathNodes);
+        Collections.reverse(pathNodesReverse);
+        found = (pathNodes.size() > 0);
+    }
+    
     public void getAStarPath(TopologicalNode startNode, TopologicalNode goalNode)
     {
         found = false;
@@ -403,8 +399,6 @@ public class Path {
         
         while (!openSet.isEmpty())
         {
-            long time_elapsed = System.currentTimeMillis() - realtimeStart;
-
             int current_index = getLowestScoreInList(openSet, f_score);
             current = openSet.get(current_index);
             if (current.equals(goalNode))
@@ -443,14 +437,23 @@ public class Path {
     }
     
     public boolean getAStarPath(OccupancyGrid agentGrid, Point startpoint, Point endpoint, boolean limit)
+    {
+        return getAStarPath(agentGrid, startpoint, endpoint, limit, Constants.MAX_PATH_SEARCH_EXPANSIONS);
+    }
+    
+    // A* that gives up after expanding maxExpansions cells. The search then fails as before (empty path,
+    // found is false), isPartial() is true and getPartialPoints() leads to the expanded cell closest to the goal
+    public boolean getAStarPath(OccupancyGrid agentGrid, Point startpoint, Point endpoint, boolean limit, int maxExpansions)
     {
         grid = agentGrid;
         start = startpoint;
         goal = endpoint;
         found = false;
-        pathPoints = new LinkedList<Point>();
-        reversePathPoints = new LinkedList<Point>();
-        allPathPixels = new LinkedList<Point>();
+        partial = false;
+        partialPathPoints = null;
+        pathPoints = new PointList();
+        reversePathPoints = new PointList();
+        pixelPoints = null;
         
         /*if (start == goal)
         {
@@ -485,17 +488,22 @@ public class Path {
         f_score.put(start, g_score.get(start) + heuristicCostEstimate(start, goal));
         
         boolean limit_hit = false;
+        int expansions = 0;
+        Point closest = start;
+        searchCount.incrementAndGet();
         
         while (!openSet.isEmpty())
         {
-            long time_elapsed = System.currentTimeMillis() - realtimeStart;
-            if ((time_elapsed > Constants.MAX_PATH_SEARCH_TIME) /*&& (limit)*/)
+            if (expansions >= maxExpansions /*&& (limit)*/)
             {
                 System.out.println("Took too long (A*), startpoint is " + startpoint.toString() + 
-                        ", endpoint is " + endpoint.toString() + "time elapsed: " + time_elapsed + "ms.");
+                        ", endpoint is " + endpoint.toString() + ", expanded " + expansions + " cells in " + 
+                        (System.currentTimeMillis() - realtimeStart) + "ms. " + getBudgetStats());
                 OutputPathError(agentGrid, startpoint, endpoint, Constants.DEFAULT_PATH_LOG_DIRECTORY);
-                StackTraceElement[] cause = Thread.currentThread().getStackTrace();
+                budgetExhaustedCount.incrementAndGet();
                 limit_hit = true;
+                reconstructPath(came_from, closest);
+                keepAsPartial();
                 break;
             }
             int current_index = getLowestScoreInList(openSet, f_score);
@@ -506,6 +514,9 @@ public class Path {
                 reconstructPath(came_from, goal);
                 break;
             }
+            expansions++;
+            if (heuristicCostEstimate(current, goal) < heuristicCostEstimate(closest, goal))
+                closest = current;
             
             openSet.remove(current_index);
             closedSet.add(current);
@@ -528,13 +539,14 @@ public class Path {
         }   
         
         if (reversePathPoints != null) {
+            pixelStart = start;
+            pixelPoints = reversePathPoints.view();
             Iterator<Point> i = reversePathPoints.iterator();
             Point curr, last = start;
             length = 0;
             while(i.hasNext()) {
                 curr = i.next();
                 length += last.distance(curr);
-                allPathPixels = mergeLists(allPathPixels, pointsAlongSegment(last.x, last.y, curr.x, curr.y));
                 last = curr;
             }
             recalcLength();
@@ -546,14 +558,23 @@ public class Path {
     }
     
     public boolean getJumpPath(OccupancyGrid agentGrid, Point startpoint, Point endpoint, boolean limit)
+    {
+        return getJumpPath(agentGrid, startpoint, endpoint, limit, Constants.MAX_PATH_SEARCH_EXPANSIONS);
+    }
+    
+    // Jump point search that, if limit is set, gives up after expanding maxExpansions jump points, the same
+    // way as getAStarPath
+    public boolean getJumpPath(OccupancyGrid agentGrid, Point startpoint, Point endpoint, boolean limit, int maxExpansions)
     {
         grid = agentGrid;
         start = startpoint;
         goal = endpoint;
         found = false;
-        pathPoints = new LinkedList<Point>();
-        reversePathPoints = new LinkedList<Point>();
-        allPathPixels = new LinkedList<Point>();
+        partial = false;
+        partialPathPoints = null;
+        pathPoints = new PointList();
+        reversePathPoints = new PointList();
+        pixelPoints = null;
         
         /*if (start == goal)
         {
@@ -588,14 +609,20 @@ public class Path {
         f_score.put(start, g_score.get(start) + heuristicCostEstimate(start, goal));
         
         boolean limit_hit = false;
+        int expansions = 0;
+        Point closest = start;
+        searchCount.incrementAndGet();
         
         while (!openSet.isEmpty())
         {
-            long time_elapsed = System.currentTimeMillis() - realtimeStart;
-            if ((time_elapsed > Constants.MAX_PATH_SEARCH_TIME) && (limit))
+            if ((expansions >= maxExpansions) && (limit))
             {
-                System.out.println("Took too long, time elapsed: " + time_elapsed + "ms.");
+                System.out.println("Took too long, expanded " + expansions + " jump points in " + 
+                        (System.currentTimeMillis() - realtimeStart) + "ms. " + getBudgetStats());
+                budgetExhaustedCount.incrementAndGet();
                 limit_hit = true;
+                reconstructJumpPath(came_from, closest);
+                keepAsPartial();
                 break;
             }
             int current_index = getLowestScoreInList(openSet, f_score);
@@ -606,6 +633,9 @@ public class Path {
                 reconstructJumpPath(came_from, goal);
                 break;
             }
+            expansions++;
+            if (heuristicCostEstimate(current, goal) < heuristicCostEstimate(closest, goal))
+                closest = current;
             
             openSet.remove(current_index);
             closedSet.add(current);
@@ -634,13 +664,14 @@ public class Path {
         }   
         
         if (reversePathPoints != null) {
+            pixelStart = start;
+            pixelPoints = reversePathPoints.view();
             Iterator<Point> i = reversePathPoints.iterator();
             Point curr, last = start;
             length = 0;
             while(i.hasNext()) {
                 curr = i.next();
                 length += last.distance(curr);
-                allPathPixels = mergeLists(allPathPixels, pointsAlongSegment(last.x, last.y, curr.x, curr.y));
                 last = curr;
             }
             
@@ -826,9 +857,11 @@ public class Path {
         start = startpoint;
         goal = endpoint;
         found = false;
-        pathPoints = new LinkedList<Point>();
-        reversePathPoints = new LinkedList<Point>();
-        allPathPixels = new LinkedList<Point>();
+        partial = false;
+        partialPathPoints = null;
+        pathPoints = new PointList();
+        reversePathPoints = new PointList();
+        pixelPoints = null;
         
         /*if (start == goal)
         {
@@ -862,14 +895,18 @@ public class Path {
         g_score.put(start, 0.0);
         f_score.put(start, g_score.get(start) + heuristicCostEstimate(start, goal));
         
+        int expansions = 0;
+        searchCount.incrementAndGet();
+        
         while (!openSet.isEmpty())
         {
-            long time_elapsed = System.currentTimeMillis() - realtimeStart;
-            if (time_elapsed > Constants.MAX_PATH_SEARCH_TIME)
+            if (expansions >= Constants.MAX_PATH_SEARCH_EXPANSIONS)
             {
-                //System.out.println("Took too long, time elapsed: " + time_elapsed + "ms.");
+                //System.out.println("Took too long, expanded " + expansions + " cells.");
+                budgetExhaustedCount.incrementAndGet();
                 break;
             }
+            expansions++;
             int current_index = getLowestScoreInList(openSet, f_score);
             current = openSet.get(current_index);
             if ((areaGrid[current.x][current.y] != Constants.UNEXPLORED_NODE_ID) && (topologicalNodes.get(areaGrid[current.x][current.y]) != null)
@@ -901,13 +938,14 @@ public class Path {
         }   
         
         if (reversePathPoints != null) {
+            pixelStart = start;
+            pixelPoints = reversePathPoints.view();
             Iterator<Point> i = reversePathPoints.iterator();
             Point curr, last = start;
             length = 0;
             while(i.hasNext()) {
                 curr = i.next();
                 length += last.distance(curr);
-                allPathPixels = mergeLists(allPathPixels, pointsAlongSegment(last.x, last.y, curr.x, curr.y));
                 last = curr;
             }
             //System.out.print(pathPoints.size() + " points, length " + (int)length + ". ");
@@ -955,8 +993,7 @@ public class Path {
             current_node = came_from.get(current_node);
         }
         pathPoints.add(current_node);
-        for (int i = pathPoints.size() - 1; i >= 0; i--)
-            reversePathPoints.add(pathPoints.get(i));
+        reversePathPoints = pathPoints.reversedView();
         makeReverse();
         found = true;
         recalcLength();
@@ -1024,8 +1061,7 @@ public class Path {
             }
         }
         else pathPoints.add(current_node);
-        for (int i = pathPoints.size() - 1; i >= 0; i--)
-            reversePathPoints.add(pathPoints.get(i));
+        reversePathPoints = pathPoints.reversedView();
         makeReverse();
         found = true;
         recalcLength();
@@ -1073,12 +1109,56 @@ public class Path {
         return length;
     }
     
+    public boolean isPartial() {
+        return partial;
+    }
+    
+    // Best path found before the budget ran out, leading to the expanded point closest to the goal;
+    // null unless isPartial() and the search got anywhere
+    public Path getPartialPath() {
+        if ((partialPathPoints == null) || (partialPathPoints.size() < 2))
+            return null;
+        return new Path(partialPathPoints);
+    }
+    
+    private void keepAsPartial() {
+        partialPathPoints = pathPoints;
+        pathPoints = new PointList();
+        reversePathPoints = new PointList();
+        length = 0;
+        found = false;
+        partial = true;
+    }
+    
+    public static int getSearchCount() {
+        return searchCount.get();
+    }
+    
+    public static int getBudgetExhaustedCount() {
+        return budgetExhaustedCount.get();
+    }
+    
+    private static String getBudgetStats() {
+        return "Searches out of budget: " + budgetExhaustedCount.get() + "/" + searchCount.get() + ".";
+    }
+    
+    // Pixels covered by the path as it was planned, for redrawing
     public LinkedList<Point> getAllPathPixels() {
-        return allPathPixels;
+        if (pixelPoints == null)
+            return new LinkedList<Point>();
+        if (pixelStart == null)
+            return new LinkedList<Point>(pixelPoints);
+        LinkedHashSet<Point> pixels = new LinkedHashSet<Point>();
+        Point last = pixelStart;
+        for (Point curr : pixelPoints) {
+            pixels.addAll(pointsAlongSegment(last.x, last.y, curr.x, curr.y));
+            last = curr;
+        }
+        return new LinkedList<Point>(pixels);
     }
     
     public void makeReverse() {
-        List<Point> t = pathPoints;
+        PointList t = pathPoints;
         pathPoints = reversePathPoints;
         reversePathPoints = t;
     }
@@ -1098,15 +1178,10 @@ public class Path {
         if(pathPoints == null || pathPoints.isEmpty())
             return 0;
         else {
-            Iterator<Point> i = pathPoints.iterator();
-            Point curr, last = pathPoints.get(0);
             length = 0;
-            while(i.hasNext()) {
-                curr = i.next();
-                length += last.distance(curr);
-                //allPathPixels = mergeLists(allPathPixels, pointsAlongSegment(last.x, last.y, curr.x, curr.y));
-                last = curr;
-            }
+            for (int i = 1; i < pathPoints.size(); i++)
+                length += Point.distance(pathPoints.getX(i - 1), pathPoints.getY(i - 1), 
+                        pathPoints.getX(i), pathPoints.getY(i));
             return length;
         }
     }
@@ -0,0 +1,207 @@
+/*
+ *     Copyright 2010, 2015 Julian de Hoog (julian@dehoog.ca), Victor Spirin (victor.spirin@cs.ox.ac.uk)
+ *
+ *     This file is part of MRESim 2.2, a simulator for testing the behaviour
+ *     of multiple robots exploring unknown environments.
+ *
+ *     If you use MRESim, I would appreciate an acknowledgement and/or a citation
+ *     of our papers:
+ *
+ *     @inproceedings{deHoog2009,
+ *         title = "Role-Based Autonomous Multi-Robot Exploration",
+ *         author = "Julian de Hoog, Stephen Cameron and Arnoud Visser",
+ *         year = "2009",
+ *         booktitle = "International Conference on Advanced Cognitive Technologies and Applications (COGNITIVE)",
+ *         location = "Athens, Greece",
+ *         month = "November",
+ *     }
+ *
+ *     @incollection{spirin2015mresim,
+ *       title={MRESim, a Multi-robot Exploration Simulator for the Rescue Simulation League},
+ *       author={Spirin, Victor and de Hoog, Julian and Visser, Arnoud and Cameron, Stephen},
+ *       booktitle={RoboCup 2014: Robot World Cup XVIII},
+ *       pages={106--117},
+ *       year={2015},
+ *       publisher={Springer}
+ *     }
+ *
+ *     MRESim is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     MRESim is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along with MRESim.
+ *     If not, see <http://www.gnu.org/licenses/>.
+ */
+package path;
+
+import java.awt.Point;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * List of points packed into an int array, one int per point (x and y as 16 bit signed halves), so
+ * coordinates must be between -32768 and 32767; add and set throw IllegalArgumentException otherwise.
+ * Removing or adding at either end is O(1) (amortized when adding), so paths can be consumed from the
+ * front and extended cheaply. reversedView() and view() share the array with this list; whichever
+ * list writes to a shared array first copies it, so views never see each other's changes.
+ * get() returns a new Point each time: changing it does not change the list.
+ * @author Victor
+ */
+public class PointList extends AbstractList<Point> implements RandomAccess {
+    private int[] data;
+    private int from;           // elements are data[from..to) in forward order
+    private int to;
+    private boolean reversed;   // list order is data[to-1] down to data[from]
+    private boolean shared;     // data may be read by another list
+    
+    public PointList() {
+        data = new int[16];
+        from = to = 4;
+    }
+    
+    public PointList(Collection<? extends Point> points) {
+        this();
+        addAll(points);
+    }
+    
+    private PointList(int[] data, int from, int to, boolean reversed) {
+        this.data = data;
+        this.from = from;
+        this.to = to;
+        this.reversed = reversed;
+        this.shared = true;
+    }
+    
+    private static int pack(int x, int y) {
+        if ((x != (short)x) || (y != (short)y))
+            throw new IllegalArgumentException("Point (" + x + ", " + y + ") out of PointList range");
+        return (x << 16) | (y & 0xFFFF);
+    }
+    
+    // The list in reverse order, sharing storage with this list
+    public PointList reversedView() {
+        shared = true;
+        return new PointList(data, from, to, !reversed);
+    }
+    
+    // A copy of the list as it is now, sharing storage with this list
+    public PointList view() {
+        shared = true;
+        return new PointList(data, from, to, reversed);
+    }
+    
+    private int index(int i) {
+        if (i < 0 || i >= to - from)
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + (to - from));
+        return reversed ? to - 1 - i : from + i;
+    }
+    
+    public int getX(int i) {
+        return data[index(i)] >> 16;
+    }
+    
+    public int getY(int i) {
+        return (short)data[index(i)];
+    }
+    
+    @Override
+    public Point get(int i) {
+        int v = data[index(i)];
+        return new Point(v >> 16, (short)v);
+    }
+    
+    @Override
+    public int size() {
+        return to - from;
+    }
+    
+    @Override
+    public Point set(int i, Point p) {
+        Point old = get(i);
+        own(0, 0);
+        data[index(i)] = pack(p.x, p.y);
+        return old;
+    }
+    
+    @Override
+    public void add(int i, Point p) {
+        if (i < 0 || i > to - from)
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + (to - from));
+        // position in forward (storage) order
+        int pos = reversed ? (to - from) - i : i;
+        if (pos == 0) {
+            own(1, 0);
+            data[--from] = pack(p.x, p.y);
+        } else {
+            own(0, 1);
+            System.arraycopy(data, from + pos, data, from + pos + 1, (to - from) - pos);
+            data[from + pos] = pack(p.x, p.y);
+            to++;
+        }
+        modCount++;
+    }
+    
+    @Override
+    public boolean addAll(Collection<? extends Point> points) {
+        if (!(points instanceof PointList) || reversed)
+            return super.addAll(points);
+        PointList other = (PointList)points;
+        int n = other.size();
+        own(0, n);
+        if (other.reversed)
+            for (int i = 0; i < n; i++)
+                data[to + i] = other.data[other.to - 1 - i];
+        else
+            System.arraycopy(other.data, other.from, data, to, n);
+        to += n;
+        modCount++;
+        return n > 0;
+    }
+    
+    @Override
+    public Point remove(int i) {
+        Point old = get(i);
+        int pos = reversed ? (to - from) - 1 - i : i;
+        // removing at either end only narrows the range, the array itself is not written
+        if (pos == 0)
+            from++;
+        else if (pos == to - from - 1)
+            to--;
+        else {
+            own(0, 0);
+            System.arraycopy(data, from + pos + 1, data, from + pos, (to - from) - pos - 1);
+            to--;
+        }
+        modCount++;
+        return old;
+    }
+    
+    @Override
+    public void clear() {
+        from = to;
+        modCount++;
+    }
+    
+    // Makes sure this list has its own array with room for front more elements before and back after
+    private void own(int front, int back) {
+        if (!shared && from >= front && data.length - to >= back)
+            return;
+        int n = to - from;
+        int frontRoom = Math.max(front, Math.min(n / 2, 1024)) + 4;
+        int backRoom = Math.max(back, n / 2) + 4;
+        int[] newData = new int[frontRoom + n + backRoom];
+        System.arraycopy(data, from, newData, frontRoom, n);
+        data = newData;
+        from = frontRoom;
+        to = frontRoom + n;
+        shared = false;
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ *     Copyright 2010, 2015 Julian de Hoog (julian@dehoog.ca), Victor Spirin (victor.spirin@cs.ox.ac.uk)
+ *
+ *     This file is part of MRESim 2.2, a simulator for testing the behaviour
+ *     of multiple robots exploring unknown environments.
+ *
+ *     If you use MRESim, I would appreciate an acknowledgement and/or a citation
+ *     of our papers:
+ *
+ *     @inproceedings{deHoog2009,
+ *         title = "Role-Based Autonomous Multi-Robot Exploration",
+ *         author = "Julian de Hoog, Stephen Cameron and Arnoud Visser",
+ *         year = "2009",
+ *         booktitle = "International Conference on Advanced Cognitive Technologies and Applications (COGNITIVE)",
+ *         location = "Athens, Greece",
+ *         month = "November",
+ *     }
+ *
+ *     @incollection{spirin2015mresim,
+ *       title={MRESim, a Multi-robot Exploration Simulator for the Rescue Simulation League},
+ *       author={Spirin, Victor and de Hoog, Julian and Visser, Arnoud and Cameron, Stephen},
+ *       booktitle={RoboCup 2014: Robot World Cup XVIII},
+ *       pages={106--117},
+ *       year={2015},
+ *       publisher={Springer}
+ *     }
+ *
+ *     MRESim is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     MRESim is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along with MRESim.
+ *     If not, see <http://www.gnu.org/licenses/>.
+ */
+package path;
+
+import config.Constants;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * Topological node graph frozen into compressed adjacency arrays once the key areas are built.
+ * Edges of node i are edgeTarget[edgeStart[i]..edgeStart[i+1]) in the order of the node's neighbour
+ * list, with the length and the grid path of each edge. Edges without a path (to the unexplored
+ * node) are left out. Searches use an indexed binary heap, so they only cost microseconds on graphs
+ * of thousands of nodes, and they keep no state between calls, so several threads can search at once.
+ * @author Victor
+ */
+public class TopologicalGraph {
+    private final TopologicalNode[] nodes;
+    private final int[] posX;
+    private final int[] posY;
+    private final int[] edgeStart;
+    private final int[] edgeTarget;
+    private final double[] edgeWeight;
+    private final Path[] edgePath;
+    private final HashMap<TopologicalNode, Integer> index;
+    
+    public TopologicalGraph(HashMap<Integer, TopologicalNode> topologicalNodes) {
+        int n = topologicalNodes.size();
+        nodes = new TopologicalNode[n];
+        posX = new int[n];
+        posY = new int[n];
+        index = new HashMap<TopologicalNode, Integer>();
+        int i = 0;
+        int edges = 0;
+        for (TopologicalNode node : topologicalNodes.values()) {
+            nodes[i] = node;
+            posX[i] = node.getPosition().x;
+            posY[i] = node.getPosition().y;
+            index.put(node, i);
+            edges += node.getListOfNeighbours().size();
+            i++;
+        }
+        
+        edgeStart = new int[n + 1];
+        int[] targets = new int[edges];
+        double[] weights = new double[edges];
+        Path[] paths = new Path[edges];
+        int e = 0;
+        for (i = 0; i < n; i++) {
+            edgeStart[i] = e;
+            for (TopologicalNode neighbour : nodes[i].getListOfNeighbours()) {
+                Path path = nodes[i].getPathToNeighbour(neighbour);
+                Integer target = index.get(neighbour);
+                if (path == null || target == null)
+                    continue;
+                targets[e] = target;
+                weights[e] = path.getLength();
+                paths[e] = path;
+                e++;
+            }
+        }
+        edgeStart[n] = e;
+        edgeTarget = Arrays.copyOf(targets, e);
+        edgeWeight = Arrays.copyOf(weights, e);
+        edgePath = Arrays.copyOf(paths, e);
+    }
+    
+    public int getNumNodes() {
+        return nodes.length;
+    }
+    
+    public int getNumEdges() {
+        return edgeTarget.length;
+    }
+    
+    // Grid path stored for the edge from a to b, or null if they are not connected
+    public Path getPathToNeighbour(TopologicalNode a, TopologicalNode b) {
+        Integer from = index.get(a);
+        Integer to = index.get(b);
+        if (from == null || to == null)
+            return null;
+        for (int e = edgeStart[from]; e < edgeStart[from + 1]; e++)
+            if (edgeTarget[e] == to)
+                return edgePath[e];
+        return null;
+    }
+    
+    /**
+     * A* from start to goal over the graph, skipping nodes whose ID is UNEXPLORED_NODE_ID.
+     * Among open nodes with equal score the one opened first is expanded first, the same order as
+     * the list based search in Path.
+     * @return the nodes from start to goal, or an empty list if goal cannot be reached
+     */
+    public LinkedList<TopologicalNode> findPath(TopologicalNode startNode, TopologicalNode goalNode) {
+        LinkedList<TopologicalNode> result = new LinkedList<TopologicalNode>();
+        Integer startIndex = index.get(startNode);
+        Integer goalIndex = index.get(goalNode);
+        if (startIndex == null || goalIndex == null)
+            return result;
+        int start = startIndex;
+        int goal = goalIndex;
+        
+        int n = nodes.length;
+        double[] g = new double[n];
+        double[] f = new double[n];
+        int[] opened = new int[n];      // order in which nodes were opened, for ties
+        int[] cameFrom = new int[n];
+        boolean[] closed = new boolean[n];
+        int[] heap = new int[n];
+        int[] heapPos = new int[n];     // position in heap, -1 if not in the open set
+        Arrays.fill(heapPos, -1);
+        Arrays.fill(cameFrom, -1);
+        int heapSize = 0;
+        int openCount = 0;
+        
+        g[start] = 0;
+        f[start] = heuristic(start, goal);
+        opened[start] = openCount++;
+        heap[0] = start;
+        heapPos[start] = 0;
+        heapSize = 1;
+        
+        while (heapSize > 0) {
+            int current = heap[0];
+            if (current == goal) {
+                for (int v = goal; v != -1; v = cameFrom[v])
+                    result.addFirst(nodes[v]);
+                return result;
+            }
+            
+            heapSize--;
+            heapPos[current] = -1;
+            if (heapSize > 0) {
+                heap[0] = heap[heapSize];
+                heapPos[heap[0]] = 0;
+                siftDown(heap, heapPos, heapSize, f, opened, 0);
+            }
+            closed[current] = true;
+            
+            for (int e = edgeStart[current]; e < edgeStart[current + 1]; e++) {
+                int neighbour = edgeTarget[e];
+                if (closed[neighbour] || nodes[neighbour].getID() == Constants.UNEXPLORED_NODE_ID)
+                    continue;
+                double tentative = g[current] + edgeWeight[e];
+                if (heapPos[neighbour] == -1 || tentative < g[neighbour]) {
+                    if (neighbour != current)
+                        cameFrom[neighbour] = current;
+                    g[neighbour] = tentative;
+                    f[neighbour] = tentative + heuristic(neighbour, goal);
+                    if (heapPos[neighbour] == -1) {
+                        opened[neighbour] = openCount++;
+                        heap[heapSize] = neighbour;
+                        heapPos[neighbour] = heapSize;
+                        heapSize++;
+                    }
+                    siftUp(heap, heapPos, f, opened, heapPos[neighbour]);
+                }
+            }
+        }
+        return result;
+    }
+    
+    private double heuristic(int a, int b) {
+        double dx = posX[a] - posX[b];
+        double dy = posY[a] - posY[b];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+    
+    private static boolean before(int a, int b, double[] f, int[] opened) {
+        return f[a] < f[b] || (f[a] == f[b] && opened[a] < opened[b]);
+    }
+    
+    private static void siftUp(int[] heap, int[] heapPos, double[] f, int[] opened, int i) {
+        int v = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!before(v, heap[parent], f, opened))
+                break;
+            heap[i] = heap[parent];
+            heapPos[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = v;
+        heapPos[v] = i;
+    }
+    
+    private static void siftDown(int[] heap, int[] heapPos, int size, double[] f, int[] opened, int i) {
+        int v = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && before(heap[child + 1], heap[child], f, opened))
+                child++;
+            if (!before(heap[child], v, f, opened))
+                break;
+            heap[i] = heap[child];
+            heapPos[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = v;
+        heapPos[v] = i;
+    }
+    
+    @Override
+    public String toString() {
+        return "[TopologicalGraph] nodes: " + nodes.length + ", edges: " + edgeTarget.length;
+    }
+}
@@ -87,6 +87,14 @@ public class TopologicalNode {
         }
     }
     
+    // Sets the path of a neighbour that was added before its path was known
+    public void setPathToNeighbour(TopologicalNode neighbour, Path path)
+    {
+        int index = neighbours.indexOf(neighbour);
+        if (index >= 0)
+            neighbour_paths.set(index, path);
+    }
+    
     public LinkedList<TopologicalNode> getListOfNeighbours()
     {
         return neighbours;